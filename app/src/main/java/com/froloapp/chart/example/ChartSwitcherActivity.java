@@ -3,13 +3,11 @@ package com.froloapp.chart.example;
 
 import android.annotation.SuppressLint;
 import android.content.res.ColorStateList;
-import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.widget.TintableCompoundButton;
 import android.support.v7.widget.AppCompatCheckBox;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -18,10 +16,11 @@ import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.LinearLayout;
-import android.widget.PopupWindow;
 import android.widget.Spinner;
+import android.widget.Toast;
 
 import com.froloapp.chart.widget.Chart;
+import com.froloapp.chart.widget.ChartModel;
 import com.froloapp.chart.widget.ChartView;
 import com.froloapp.chart.widget.Line;
 import com.froloapp.chart.widget.Misc;
@@ -30,8 +29,8 @@ import com.froloapp.chart.widget.ChartSlider;
 
 public class ChartSwitcherActivity extends AbsChartActivity implements
         ChartView.OnLineVisibilityChangedListener,
-        ChartSlider.OnScrollListener,
-        ChartView.OnStampClickListener {
+        ChartView.OnXPositionsChangedListener,
+        ChartSlider.OnScrollListener {
 
     private static final String LOG_TAG = "ChartSwitcherActivity";
 
@@ -45,8 +44,6 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
     // I need to know when spinner callback triggered due a user input or programmatically
     private boolean mSpinnerTouched = false;
 
-    private PopupWindow mPopupWindow;
-
     private void log(String msg) {
         if (BuildConfig.DEBUG) Log.d(LOG_TAG, msg);
     }
@@ -58,6 +55,8 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
         spinnerCharts = findViewById(R.id.spinnerCharts);
         chartView = findViewById(R.id.chartView);
         chartSlider = findViewById(R.id.chartSlider);
+        // the slider shows the same data, so both views share one model
+        chartSlider.setModel(chartView.getModel());
         layoutCheckboxes = findViewById(R.id.layoutCheckboxes);
 
         spinnerCharts.setOnTouchListener(new View.OnTouchListener() {
@@ -92,7 +91,7 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
         final float stopXPosition = 0.3f;
 
         chartView.setOnLineVisibilityChangedListener(this);
-        chartView.setOnStampClickListener(this);
+        chartView.setOnXPositionsChangedListener(this);
         chartView.setXPositions(startXPosition, stopXPosition, false);
         chartSlider.setXPositions(startXPosition, stopXPosition, false);
         chartSlider.setOnScrollListener(this);
@@ -123,9 +122,17 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
     }
 
     private void initChart(Chart chart, boolean animate) {
-        chartView.setChart(chart, animate);
-        chartSlider.setChart(chart, animate);
-        initCheckboxes(chart);
+        // huge charts are prepared in background, the checkboxes follow once the chart is shown
+        chartView.setChartAsync(chart, animate, new ChartModel.OnChartReadyListener() {
+            @Override public void onChartReady(Chart chart) {
+                initCheckboxes(chart);
+            }
+
+            @Override public void onChartFailed(Chart chart, Throwable error) {
+                Log.e(LOG_TAG, "Failed to show chart " + chart, error);
+                Toast.makeText(ChartSwitcherActivity.this, error.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void initCheckboxes(final Chart chart) {
@@ -147,10 +154,8 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
                 @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
                     if (isChecked) {
                         chartView.show(line, true);
-                        chartSlider.show(line, true);
                     } else {
                         chartView.hide(line, true);
-                        chartSlider.hide(line, true);
                     }
                 }
             });
@@ -169,10 +174,11 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
 
     @Override
     public void onLineVisibilityChanged(Line line, boolean isVisible) {
-        for (int i = 0; i < layoutCheckboxes.getChildCount(); i++) {
-            CheckBox checkBox = (CheckBox) layoutCheckboxes.getChildAt(i);
-            Object tag = checkBox.getTag();
-            if (tag != null && tag.equals(line)) {
+        // checkboxes are added in the order of lines
+        int index = line.getIndex();
+        if (index < layoutCheckboxes.getChildCount()) {
+            CheckBox checkBox = (CheckBox) layoutCheckboxes.getChildAt(index);
+            if (line.equals(checkBox.getTag())) {
                 checkBox.setChecked(isVisible);
             }
         }
@@ -180,48 +186,16 @@ public class ChartSwitcherActivity extends AbsChartActivity implements
 
     @Override
     public void onScroll(ChartSlider slider, float startStampRel, float endStampRel) {
+        // the chart follows the slider, so it's simplified while the slider is dragged
+        chartView.notifyInteraction();
         chartView.setXPositions(startStampRel, endStampRel, true);
     }
 
     @Override
-    public void onTouchDown(final ChartView view, int stampIndex, float stampXCoordinate) {
-        showPopup(view, stampIndex, stampXCoordinate);
-    }
-
-    @Override
-    public void onTouchUp(ChartView view) {
-        PopupWindow currWindow = this.mPopupWindow;
-        if (currWindow != null) {
-            currWindow.dismiss();
-            this.mPopupWindow = null;
-        }
-    }
-
-    private void showPopup(ChartView chartView, int stampIndex, float stampXCoordinate) {
-        final Rect location = Utils.getViewLocation(chartView);
-        if (location == null) {
-            // early return. Shouldn't happen
-            return;
-        }
-
-        final int locX = location.left
-                + (int) stampXCoordinate
-                + 16; // + 16 to make a margin between x axis bar and dialog
-        final int locY = location.top;
-
-        final PopupWindow currPopup = this.mPopupWindow;
-        if (currPopup == null) {
-            PopupWindow newWindow = PopupHelper.createPopupWindow(chartView, stampIndex);
-            if (newWindow != null) {
-                newWindow.showAtLocation(chartView, Gravity.TOP | Gravity.START, locX, locY);
-                this.mPopupWindow = newWindow;
-            }
-        } else {
-            final int w = ViewGroup.LayoutParams.WRAP_CONTENT;
-            final int h = ViewGroup.LayoutParams.WRAP_CONTENT;
-            View v = currPopup.getContentView();
-            PopupHelper.populateWindowView(v, chartView, stampIndex);
-            currPopup.update(locX, locY, w, h);
+    public void onXPositionsChanged(float startXPosition, float stopXPosition, boolean fromUser) {
+        // the slider follows pinch zoom and pan of the chart
+        if (fromUser) {
+            chartSlider.setXPositions(startXPosition, stopXPosition, false);
         }
     }
 }
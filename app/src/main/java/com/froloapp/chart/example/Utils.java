@@ -1,8 +1,5 @@
 package com.froloapp.chart.example;
 
-import android.graphics.Rect;
-import android.view.View;
-
 import java.util.Calendar;
 
 class Utils {
@@ -34,33 +31,4 @@ class Utils {
             default: return null;
         }
     }
-
-    static String getDayOfWeekString(int dayOfWeek) {
-        switch (dayOfWeek) {
-            case 0: return "Mon";
-            case 1: return "Tue";
-            case 2: return "Wed";
-            case 3: return "Apr";
-            case 4: return "Thu";
-            case 5: return "Fri";
-            case 6: return "Sat";
-            case 7: return "Sun";
-            default: return null;
-        }
-    }
-
-    public static /*nullable*/ Rect getViewLocation(View v) {
-        int[] loc = new int[2];
-        try {
-            v.getLocationOnScreen(loc);
-        } catch (NullPointerException ignored) { // seems the view is not attached to window anymore
-            return null;
-        }
-        Rect location = new Rect();
-        location.left = loc[0];
-        location.top = loc[1];
-        location.right = location.left + v.getWidth();
-        location.bottom = location.top + v.getHeight();
-        return location;
-    }
 }
@@ -1,11 +1,22 @@
 package com.froloapp.chart.widget;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import com.froloapp.chart.R;
+
+import java.util.BitSet;
 
 
 abstract class AbsChartView extends View {
@@ -13,17 +24,185 @@ abstract class AbsChartView extends View {
     private static final int DEFAULT_WIDTH_IN_DP = 200;
     private static final int DEFAULT_HEIGHT_IN_DP = 100;
 
+    private static final Interpolator DEFAULT_X_POSITIONS_INTERPOLATOR =
+            new AccelerateDecelerateInterpolator();
+
+    /**
+     * Lines are drawn with fewer vertices in interactive mode.
+     */
+    public static final int INTERACTIVE_REDUCE_VERTICES = 1;
+    /**
+     * Lines are drawn without anti-aliasing in interactive mode.
+     */
+    public static final int INTERACTIVE_DISABLE_ANTI_ALIAS = 1 << 1;
+    /**
+     * Fading axis labels are not drawn in interactive mode.
+     */
+    public static final int INTERACTIVE_SKIP_PHANTOM_LABELS = 1 << 2;
+
+    private static final int DEFAULT_INTERACTIVE_MODE = INTERACTIVE_REDUCE_VERTICES
+            | INTERACTIVE_DISABLE_ANTI_ALIAS
+            | INTERACTIVE_SKIP_PHANTOM_LABELS;
+    private static final int DEFAULT_INTERACTIVE_IDLE_TIMEOUT = 200;
+    private static final float DEFAULT_INTERACTIVE_VERTEX_DENSITY = 0.5f;
+
+    public interface OnXPositionsChangedListener {
+        /**
+         * @param fromUser true if the window was changed by a gesture on the view
+         */
+        void onXPositionsChanged(float startXPosition, float stopXPosition, boolean fromUser);
+    }
+
     public interface OnLineVisibilityChangedListener {
         void onLineVisibilityChanged(Line line, boolean isVisible);
     }
 
-    private final ChartDelegate mChartDelegate = new ChartDelegate(this);
+    public interface OnVisibleLinesChangedListener {
+        /**
+         * Called once per change, even if many lines are shown or hidden at once;
+         * @param visibleLines bit i is set if line i is visible, the set is reused by the view
+         */
+        void onVisibleLinesChanged(BitSet visibleLines);
+    }
+
+    // Exposes this view to the delegates without making their callbacks public
+    private final ChartHost mHost = new ChartHost() {
+        @Override public Context getContext() {
+            return AbsChartView.this.getContext();
+        }
+        @Override public int getMeasuredWidth() {
+            return AbsChartView.this.getMeasuredWidth();
+        }
+        @Override public int getMeasuredHeight() {
+            return AbsChartView.this.getMeasuredHeight();
+        }
+        @Override public int getPaddingLeft() {
+            return AbsChartView.this.getPaddingLeft();
+        }
+        @Override public int getPaddingTop() {
+            return AbsChartView.this.getPaddingTop();
+        }
+        @Override public int getPaddingRight() {
+            return AbsChartView.this.getPaddingRight();
+        }
+        @Override public int getPaddingBottom() {
+            return AbsChartView.this.getPaddingBottom();
+        }
+        @Override public int getFooterHeight() {
+            return mFooterHeight;
+        }
+        @Override public void setFooterHeight(int height) {
+            AbsChartView.this.setFooterHeight(height);
+        }
+        @Override public void invalidate() {
+            if (!postponeRedraw()) {
+                AbsChartView.this.invalidate();
+            }
+        }
+        @Override public void invalidate(int left, int top, int right, int bottom) {
+            if (!postponeRedraw()) {
+                AbsChartView.this.invalidate(left, top, right, bottom);
+            }
+        }
+        @Override public void requestLayout() {
+            AbsChartView.this.requestLayout();
+        }
+    };
+
+    private final ChartDelegate mChartDelegate = new ChartDelegate(mHost);
 
     private int mFooterHeight; // for X axis
 
-    private Chart mChart;
+    // Interactive mode: the chart is drawn faster and rougher while the user interacts with it
+    private int mInteractiveMode;
+    private long mInteractiveIdleTimeout;
+    private float mInteractiveVertexDensity;
+    private boolean mIsInteractive = false;
+
+    private final Runnable mLeaveInteractiveMode = new Runnable() {
+        @Override public void run() {
+            setInteractive(false);
+        }
+    };
+
+    // Adapts render quality to the measured draw time
+    private final FrameGovernor mFrameGovernor = new FrameGovernor(new Runnable() {
+        @Override public void run() {
+            // the level may change while drawing, so the new quality is applied in the next frame
+            post(mApplyRenderQuality);
+        }
+    });
+
+    // Restores the full quality when no frame has been drawn for the idle timeout,
+    // as the governor only measures frames and would keep a lowered level at rest
+    private final Runnable mRestoreFullQuality = new Runnable() {
+        @Override public void run() {
+            mFrameGovernor.onIdle();
+        }
+    };
+
+    private final Runnable mApplyRenderQuality = new Runnable() {
+        @Override public void run() {
+            applyRenderQuality();
+        }
+    };
+
+    // Used to limit the frame rate of animations when the governor asks so
+    private long mLastDrawTime = 0L;
+    private boolean mIsDelayedRedrawPending = false;
+
+    private final Runnable mDelayedRedraw = new Runnable() {
+        @Override public void run() {
+            mIsDelayedRedrawPending = false;
+            invalidate();
+        }
+    };
+
+    // Notifies the listeners about visibility changes, no matter who changed the model.
+    // It's registered only while the view is attached, so a shared model doesn't keep detached views
+    private boolean mIsAttached = false;
+    private final ChartModel.Observer mModelObserver = new ChartModel.Observer() {
+        @Override public void onChartChanged(ChartModel model, boolean animate) {
+        }
+
+        @Override public void onLineVisibilitiesChanged(ChartModel model, BitSet changedLines, boolean animate) {
+            for (int i = changedLines.nextSetBit(0); i >= 0; i = changedLines.nextSetBit(i + 1)) {
+                dispatchLineVisibilityChanged(model.getLineAt(i), model.isLineVisibleAt(i));
+            }
+            dispatchVisibleLinesChanged(model);
+        }
+    };
 
     private OnLineVisibilityChangedListener mOnLineVisibilityChangedListener;
+    private OnVisibleLinesChangedListener mOnVisibleLinesChangedListener;
+    private final BitSet mVisibleLines = new BitSet();
+    private OnXPositionsChangedListener mOnXPositionsChangedListener;
+
+    // Animates X positions from the current ones to the target ones, a frame at a time
+    private ValueAnimator mXPositionsAnimator;
+    private float mAnimStartXPositionFrom;
+    private float mAnimStopXPositionFrom;
+    private float mAnimStartXPositionTo;
+    private float mAnimStopXPositionTo;
+
+    private final ValueAnimator.AnimatorUpdateListener mXPositionsUpdater =
+            new ValueAnimator.AnimatorUpdateListener() {
+        @Override public void onAnimationUpdate(ValueAnimator animation) {
+            float fraction = animation.getAnimatedFraction();
+            float start = mAnimStartXPositionFrom + (mAnimStartXPositionTo - mAnimStartXPositionFrom) * fraction;
+            float stop = mAnimStopXPositionFrom + (mAnimStopXPositionTo - mAnimStopXPositionFrom) * fraction;
+            applyXPositionsFrame(start, stop);
+        }
+    };
+
+    private final Animator.AnimatorListener mXPositionsAnimListener = new AnimatorListenerAdapter() {
+        @Override public void onAnimationStart(Animator animation) {
+            onXPositionsAnimationStarted();
+        }
+        @Override public void onAnimationEnd(Animator animation) {
+            onXPositionsAnimationEnded();
+        }
+    };
 
     public AbsChartView(Context context) {
         this(context, null);
@@ -39,6 +218,22 @@ abstract class AbsChartView extends View {
     }
 
     private void init(Context context, AttributeSet attrs) {
+        if (attrs != null) {
+            TypedArray typedArray = context.getTheme()
+                    .obtainStyledAttributes(attrs, R.styleable.AbsChartView, 0, 0);
+            mInteractiveMode = typedArray.getInt(R.styleable.AbsChartView_interactiveMode,
+                    DEFAULT_INTERACTIVE_MODE);
+            mInteractiveIdleTimeout = typedArray.getInt(R.styleable.AbsChartView_interactiveIdleTimeout,
+                    DEFAULT_INTERACTIVE_IDLE_TIMEOUT);
+            mInteractiveVertexDensity = typedArray.getFloat(R.styleable.AbsChartView_interactiveVertexDensity,
+                    DEFAULT_INTERACTIVE_VERTEX_DENSITY);
+            typedArray.recycle();
+        } else {
+            mInteractiveMode = DEFAULT_INTERACTIVE_MODE;
+            mInteractiveIdleTimeout = DEFAULT_INTERACTIVE_IDLE_TIMEOUT;
+            mInteractiveVertexDensity = DEFAULT_INTERACTIVE_VERTEX_DENSITY;
+        }
+
         mChartDelegate.loadAttributes(context, attrs);
         mChartDelegate.setXPositions(0.0f, 0.3f, false);
     }
@@ -47,6 +242,10 @@ abstract class AbsChartView extends View {
         return mChartDelegate;
     }
 
+    final ChartHost getChartHost() {
+        return mHost;
+    }
+
     public void setOnLineVisibilityChangedListener(OnLineVisibilityChangedListener l) {
         this.mOnLineVisibilityChangedListener = l;
     }
@@ -57,9 +256,139 @@ abstract class AbsChartView extends View {
         }
     }
 
+    public void setOnVisibleLinesChangedListener(OnVisibleLinesChangedListener l) {
+        this.mOnVisibleLinesChangedListener = l;
+    }
+
+    private void dispatchVisibleLinesChanged(ChartModel model) {
+        if (mOnVisibleLinesChangedListener != null) {
+            final BitSet visibleLines = mVisibleLines;
+            visibleLines.clear();
+            for (int i = 0; i < model.getLineCount(); i++) {
+                if (model.isLineVisibleAt(i)) {
+                    visibleLines.set(i);
+                }
+            }
+            mOnVisibleLinesChangedListener.onVisibleLinesChanged(visibleLines);
+        }
+    }
+
+    public void setOnXPositionsChangedListener(OnXPositionsChangedListener l) {
+        this.mOnXPositionsChangedListener = l;
+    }
+
+    void dispatchXPositionsChanged(float startXPosition, float stopXPosition, boolean fromUser) {
+        if (mOnXPositionsChangedListener != null) {
+            mOnXPositionsChangedListener.onXPositionsChanged(startXPosition, stopXPosition, fromUser);
+        }
+    }
+
+    /**
+     * Sets what is simplified while the user interacts with the chart.
+     * @param flags combination of INTERACTIVE_* flags, 0 disables interactive mode
+     */
+    public void setInteractiveMode(int flags) {
+        mInteractiveMode = flags;
+        applyRenderQuality();
+    }
+
+    /**
+     * Sets how long the chart stays simplified after the last interaction.
+     */
+    public void setInteractiveIdleTimeout(long millis) {
+        mInteractiveIdleTimeout = millis;
+    }
+
+    /**
+     * Sets how many vertices per pixel each line draws in interactive mode.
+     */
+    public void setInteractiveVertexDensity(float verticesPerPixel) {
+        mInteractiveVertexDensity = verticesPerPixel;
+        applyRenderQuality();
+    }
+
+    /**
+     * Enables caching of axes and lines in separate layers, so that touching the chart
+     * or animating one part of it doesn't redraw the others. Enabled by default.
+     * With hardware acceleration the layers are render nodes on API 29+ and aren't cached below it;
+     * in software they are bitmaps, a layer changing on every frame is drawn directly until it settles.
+     */
+    public void setLayerCacheEnabled(boolean enabled) {
+        mChartDelegate.setLayerCacheEnabled(enabled);
+    }
+
+    /**
+     * Returns the governor that adapts drawing quality of this view to its draw time.
+     */
+    public FrameGovernor getFrameGovernor() {
+        return mFrameGovernor;
+    }
+
+    public boolean isInteractive() {
+        return mIsInteractive;
+    }
+
+    /**
+     * Tells the view that the user is interacting with it, so it's drawn in interactive mode
+     * until the idle timeout passes. Gestures on the view itself do this automatically,
+     * a host may call it for a linked view (e.g. when the slider controlling this chart is dragged).
+     */
+    public void notifyInteraction() {
+        if (mInteractiveMode == 0) {
+            return;
+        }
+        setInteractive(true);
+        removeCallbacks(mLeaveInteractiveMode);
+        postDelayed(mLeaveInteractiveMode, mInteractiveIdleTimeout);
+    }
+
+    private void setInteractive(boolean interactive) {
+        if (mIsInteractive != interactive) {
+            mIsInteractive = interactive;
+            // leaving interactive mode redraws the chart in full quality
+            applyRenderQuality();
+        }
+    }
+
+    // Picks the roughest of the interactive mode quality and the governor quality
+    private void applyRenderQuality() {
+        final int mode = mIsInteractive ? mInteractiveMode : 0;
+        final FrameGovernor governor = mFrameGovernor;
+
+        float maxVerticesPerPixel = governor.getMaxVerticesPerPixel();
+        if ((mode & INTERACTIVE_REDUCE_VERTICES) != 0
+                && (maxVerticesPerPixel == 0f || mInteractiveVertexDensity < maxVerticesPerPixel)) {
+            maxVerticesPerPixel = mInteractiveVertexDensity;
+        }
+        boolean antiAlias = (mode & INTERACTIVE_DISABLE_ANTI_ALIAS) == 0
+                && governor.isAntiAliasEnabled();
+        boolean phantomLabels = (mode & INTERACTIVE_SKIP_PHANTOM_LABELS) == 0
+                && governor.willDrawPhantomLabels();
+        mChartDelegate.setRenderQuality(maxVerticesPerPixel, antiAlias, phantomLabels);
+    }
+
+    // All the delegates redraw the view through the host, which asks this method first.
+    // Returns true if the frame came too early and a full redraw is posted for later instead
+    private boolean postponeRedraw() {
+        long minFrameInterval = mFrameGovernor.getMinFrameIntervalMillis();
+        if (minFrameInterval > 0) {
+            long sinceLastDraw = SystemClock.uptimeMillis() - mLastDrawTime;
+            if (sinceLastDraw < minFrameInterval) {
+                if (!mIsDelayedRedrawPending) {
+                    mIsDelayedRedrawPending = true;
+                    postDelayed(mDelayedRedraw, minFrameInterval - sinceLastDraw);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        mIsAttached = true;
+        mChartDelegate.getModel().addObserver(mModelObserver);
         mChartDelegate.attach();
     }
 
@@ -78,12 +407,28 @@ abstract class AbsChartView extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        long startTime = System.nanoTime();
         mChartDelegate.draw(canvas);
+        mFrameGovernor.onFrameDrawn(System.nanoTime() - startTime);
+        mLastDrawTime = SystemClock.uptimeMillis();
+        removeCallbacks(mRestoreFullQuality);
+        if (mFrameGovernor.getLevel() != FrameGovernor.LEVEL_FULL) {
+            postDelayed(mRestoreFullQuality, mInteractiveIdleTimeout);
+        }
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        removeCallbacks(mLeaveInteractiveMode);
+        removeCallbacks(mApplyRenderQuality);
+        removeCallbacks(mRestoreFullQuality);
+        removeCallbacks(mDelayedRedraw);
+        mIsDelayedRedrawPending = false;
+        cancelXPositionsAnimation();
+        setInteractive(false);
+        mIsAttached = false;
+        mChartDelegate.getModel().removeObserver(mModelObserver);
         // Reset the helper here
         mChartDelegate.detach();
     }
@@ -101,36 +446,165 @@ abstract class AbsChartView extends View {
         invalidate();
     }
 
+    /**
+     * Returns the model this view shows;
+     * Each view has its own model by default;
+     */
+    public ChartModel getModel() {
+        return mChartDelegate.getModel();
+    }
+
+    /**
+     * Makes this view show the given model;
+     * Views sharing a model share its data, line visibility and everything derived from them,
+     * changes made through any of the views or through the model itself are shown by all of them;
+     */
+    public void setModel(ChartModel model) {
+        ChartModel oldModel = mChartDelegate.getModel();
+        if (oldModel == model) {
+            return;
+        }
+        oldModel.removeObserver(mModelObserver);
+        mChartDelegate.setModel(model);
+        if (mIsAttached) {
+            model.addObserver(mModelObserver);
+        }
+    }
+
     /* Nullable */
     public Chart getChart() {
-        return mChart;
+        return getModel().getChart();
     }
 
     public void setChart(Chart chart, boolean animate) {
-        mChart = chart;
-        mChartDelegate.setChart(chart.getPoints(), chart.getLines(), animate);
+        getModel().setChart(chart, animate);
+    }
+
+    /**
+     * Sets the chart, computing its derived data on a background thread;
+     * See {@link ChartModel#setChartAsync};
+     * @param listener nullable, notified on the main thread when the chart is shown
+     */
+    public void setChartAsync(Chart chart, boolean animate,
+                              /* Nullable */ ChartModel.OnChartReadyListener listener) {
+        getModel().setChartAsync(chart, animate, listener);
+    }
+
+    /**
+     * Finds statistics of the line values between the X positions;
+     * See {@link Chart#getRangeStats(Line, float, float)};
+     */
+    public RangeStats getRangeStats(Line line, float startXPosition, float stopXPosition) {
+        RangeStats stats = new RangeStats();
+        getRangeStats(line, startXPosition, stopXPosition, stats);
+        return stats;
+    }
+
+    /**
+     * Same as {@link #getRangeStats(Line, float, float)}, but writes the result to the given instance;
+     */
+    public void getRangeStats(Line line, float startXPosition, float stopXPosition, RangeStats out) {
+        Chart chart = getChart();
+        if (chart != null) {
+            chart.getRangeStats(line, startXPosition, stopXPosition, out);
+        } else {
+            out.clear();
+        }
     }
 
+    /**
+     * Finds statistics of the line values in the visible window;
+     * Call it from {@link OnXPositionsChangedListener} to follow the window;
+     */
+    public void getRangeStats(Line line, RangeStats out) {
+        getRangeStats(line, getStartXPosition(), getStopXPosition(), out);
+    }
+
+    public float getStartXPosition() {
+        return mChartDelegate.getStartXPosition();
+    }
+
+    public float getStopXPosition() {
+        return mChartDelegate.getStopXPosition();
+    }
+
+    /**
+     * Sets the visible window of the chart at once, cancels the running window animation;
+     * If animate is true, only the Y range and the labels are animated;
+     */
     public void setXPositions(float startXPosition, float stopXPosition, boolean animate) {
+        cancelXPositionsAnimation();
         mChartDelegate.setXPositions(startXPosition, stopXPosition, animate);
+        dispatchXPositionsChanged(getStartXPosition(), getStopXPosition(), false);
+    }
+
+    /**
+     * Moves the visible window of the chart to the given X positions smoothly;
+     * Each frame the window is interpolated, the Y range and the labels are updated
+     * and the listeners are notified once;
+     * @param interpolator nullable, accelerate-decelerate interpolator is used by default
+     */
+    public void animateXPositions(float startXPosition, float stopXPosition,
+                                  long duration, /* Nullable */ Interpolator interpolator) {
+        cancelXPositionsAnimation();
+        mAnimStartXPositionFrom = getStartXPosition();
+        mAnimStopXPositionFrom = getStopXPosition();
+        mAnimStartXPositionTo = startXPosition;
+        mAnimStopXPositionTo = stopXPosition;
+
+        ValueAnimator anim = mXPositionsAnimator;
+        if (anim == null) {
+            anim = ValueAnimator.ofFloat(0f, 1f);
+            anim.addUpdateListener(mXPositionsUpdater);
+            anim.addListener(mXPositionsAnimListener);
+            mXPositionsAnimator = anim;
+        }
+        anim.setDuration(duration);
+        anim.setInterpolator(interpolator != null ? interpolator : DEFAULT_X_POSITIONS_INTERPOLATOR);
+        anim.start();
+    }
+
+    final void cancelXPositionsAnimation() {
+        if (mXPositionsAnimator != null) {
+            mXPositionsAnimator.cancel();
+        }
+    }
+
+    // Applies a frame of the window animation
+    void applyXPositionsFrame(float startXPosition, float stopXPosition) {
+        notifyInteraction();
+        mChartDelegate.setXPositions(startXPosition, stopXPosition, true);
+        dispatchXPositionsChanged(startXPosition, stopXPosition, false);
+    }
+
+    void onXPositionsAnimationStarted() {
+    }
+
+    void onXPositionsAnimationEnded() {
     }
 
     public boolean isLineVisible(Line line) {
-        return mChartDelegate.isLineVisible(line);
+        return getModel().isLineVisible(line);
     }
 
     public int getVisibleLineCount() {
-        return mChartDelegate.getVisibleLineCount();
+        return getModel().getVisibleLineCount();
     }
 
     public void show(Line line, boolean animate) {
-        mChartDelegate.show(line, animate);
-        dispatchLineVisibilityChanged(line, true);
+        getModel().show(line, animate);
     }
 
     public void hide(Line line, boolean animate) {
-        mChartDelegate.hide(line, animate);
-        dispatchLineVisibilityChanged(line, false);
+        getModel().hide(line, animate);
+    }
+
+    /**
+     * Shows the lines, which bits are set, and hides the others in one pass;
+     * See {@link ChartModel#setVisibleLines};
+     */
+    public void setVisibleLines(BitSet visibleLines, boolean animate) {
+        getModel().setVisibleLines(visibleLines, animate);
     }
 
     /* package */ int getFooterHeight() {
@@ -184,12 +658,11 @@ abstract class AbsChartView extends View {
         ss.mStartXPosition = mChartDelegate.getStartXPosition();
         ss.mStopXPosition = mChartDelegate.getStopXPosition();
 
-        int[] lineVisibilities = new int[mChartDelegate.getLineCount()];
+        final ChartModel model = getModel();
+        int[] lineVisibilities = new int[model.getLineCount()];
 
         for (int i = 0; i < lineVisibilities.length; i++) {
-            Line line = mChartDelegate.getLineAt(i);
-            boolean isVisible = mChartDelegate.isLineVisible(line);
-            lineVisibilities[i] = isVisible ? 1 : 0;
+            lineVisibilities[i] = model.isLineVisibleAt(i) ? 1 : 0;
         }
 
         ss.mLineVisibilities = lineVisibilities;
@@ -209,18 +682,16 @@ abstract class AbsChartView extends View {
 
         mChartDelegate.setXPositions(startXPercentage, stopXPercentage, false);
 
-        if (lineVisibilities.length == mChartDelegate.getLineCount()) {
+        // the model notifies the listeners about lines, which visibility has changed
+        final ChartModel model = getModel();
+        if (lineVisibilities.length == model.getLineCount()) {
+            BitSet visibleLines = new BitSet(lineVisibilities.length);
             for (int i = 0; i < lineVisibilities.length; i++) {
-                boolean isVisible = lineVisibilities[i] > 0;
-                Line line = mChartDelegate.getLineAt(i);
-                if (isVisible) {
-                    mChartDelegate.show(line, false);
-                } else {
-                    mChartDelegate.hide(line, false);
+                if (lineVisibilities[i] > 0) {
+                    visibleLines.set(i);
                 }
-
-                dispatchLineVisibilityChanged(line, isVisible);
             }
+            model.setVisibleLines(visibleLines, false);
         }
 
     }
@@ -0,0 +1,60 @@
+package com.froloapp.chart.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+
+// Line values in a float buffer: a direct buffer keeps them outside the Java heap,
+// a buffer mapped from a file lets the system page them in and out, so lines bigger than the heap can be viewed.
+// Reads use absolute gets or duplicates of the buffer, so the buffer is never changed and may be read from any thread
+final class BufferValues extends LineValues {
+    private final FloatBuffer mBuffer;
+    private final int mSize;
+
+    // The values are the remaining ones of the buffer, they are not copied
+    BufferValues(FloatBuffer buffer) {
+        mBuffer = buffer.slice();
+        mSize = mBuffer.capacity();
+    }
+
+    // Maps count floats of the file from the byte offset in read-only mode.
+    // A mapping is limited to Integer.MAX_VALUE bytes
+    static BufferValues map(File file, long offset, int count, ByteOrder order) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            return new BufferValues(channel.map(FileChannel.MapMode.READ_ONLY, offset, count * 4L)
+                    .order(order)
+                    .asFloatBuffer());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override int size() {
+        return mSize;
+    }
+
+    @Override float get(int index) {
+        return mBuffer.get(index);
+    }
+
+    @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+        if (step == 1) {
+            // a bulk copy, the position belongs to the duplicate only
+            FloatBuffer buffer = mBuffer.duplicate();
+            buffer.position(fromIndex);
+            buffer.get(out, outOffset, count);
+            return;
+        }
+        final FloatBuffer buffer = mBuffer;
+        for (int k = 0, i = fromIndex; k < count; k++, i += step) {
+            out[outOffset + k] = buffer.get(i);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.froloapp.chart.widget;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,6 +14,11 @@ public final class Chart {
         private String mName;
         private List<Point> mPoints;
         private List<Line> mLines = new ArrayList<>();
+        // Raw values of the lines, they are encoded when the chart is built, null for lines backed by buffers
+        private List<float[]> mValues = new ArrayList<>();
+        private boolean mIsValueMatrixEnabled = false;
+        private float mMaxValueError = 0f;
+        private boolean mIsValueCompressionEnabled = false;
 
         public Builder(String name) {
             this.mName = name != null ? name : "";
@@ -18,6 +27,7 @@ public final class Chart {
         public Builder addPoints(List<Point> points) {
             this.mPoints = points;
             this.mLines.clear();
+            this.mValues.clear();
             return this;
         }
 
@@ -28,23 +38,133 @@ public final class Chart {
             if (mPoints.size() != value.length) {
                 throw new IllegalArgumentException("Value count doesn't match point count");
             }
-            mLines.add(new Line(value, name, color));
+            mLines.add(new Line(new LineValues.FloatValues(value, 0, 1, value.length), mLines.size(), name, color));
+            mValues.add(value);
+            return this;
+        }
+
+        /**
+         * Adds a line, which reads its values right from the remaining ones of the buffer, they are not copied;
+         * A direct buffer keeps the values outside the Java heap; The buffer must not be changed afterwards;
+         * Such values are neither encoded nor compressed; The value matrix is not built for a chart with them;
+         * Only the line values leave the heap: the points and the per point data of a shown chart
+         * (X positions, local min and max and their range tree, 28 bytes per point besides the Point) stay there;
+         */
+        public Builder addLine(FloatBuffer values, String name, int color) {
+            if (mPoints == null) {
+                throw new IllegalArgumentException("No points added yet");
+            }
+            if (mPoints.size() != values.remaining()) {
+                throw new IllegalArgumentException("Value count doesn't match point count");
+            }
+            mLines.add(new Line(new BufferValues(values), mLines.size(), name, color));
+            mValues.add(null);
+            return this;
+        }
+
+        /**
+         * Adds a line, which values are floats in the file starting at the given byte offset, one per point;
+         * The file is mapped to memory read-only, so the system pages the values in and out as they are read,
+         * and the heap use doesn't grow with the number of lines; The file must not be changed afterwards;
+         * A line may take at most Integer.MAX_VALUE bytes; The same limits as for
+         * {@link #addLine(FloatBuffer, String, int)} apply: the points and the per point data stay on the heap;
+         */
+        public Builder addLine(File file, long offset, ByteOrder order, String name, int color) throws IOException {
+            if (mPoints == null) {
+                throw new IllegalArgumentException("No points added yet");
+            }
+            if (offset < 0 || file.length() < offset + mPoints.size() * 4L) {
+                throw new IllegalArgumentException("File is too short for point count");
+            }
+            mLines.add(new Line(BufferValues.map(file, offset, mPoints.size(), order), mLines.size(), name, color));
+            mValues.add(null);
+            return this;
+        }
+
+        /**
+         * If enabled, values of all lines are stored in one index-major matrix,
+         * so the values at the same point lie next to each other;
+         * It makes scans over all lines at a point faster, lines become views of the matrix columns;
+         * Drawing a single line gets slower though, as its values are no longer contiguous;
+         * Ignored if any line is backed by a buffer, the matrix would copy its values to the heap;
+         * build() throws IllegalStateException if the matrix would hold more than Integer.MAX_VALUE values;
+         */
+        public Builder setValueMatrixEnabled(boolean enabled) {
+            this.mIsValueMatrixEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Values of a line are stored in the most compact encoding (8 or 16 bit codes, half floats or floats),
+         * which keeps every value within the given error; 0 by default, i.e. only lossless encodings are used;
+         * Ignored if the value matrix is enabled;
+         */
+        public Builder setMaxValueError(float maxError) {
+            this.mMaxValueError = Math.max(0f, maxError);
+            return this;
+        }
+
+        /**
+         * If enabled, values of a line are compressed losslessly in blocks, only the blocks being read are decoded;
+         * It suits long series of slowly changing values, such as archives of metrics, and takes precedence
+         * over {@link #setMaxValueError(float)}; Ignored if the value matrix is enabled;
+         */
+        public Builder setValueCompressionEnabled(boolean enabled) {
+            this.mIsValueCompressionEnabled = enabled;
             return this;
         }
 
         public Chart build() {
-            return new Chart(mName, mPoints, mLines);
+            if (mPoints == null) {
+                return new Chart(mName, mPoints, mLines, null);
+            }
+            if (!mIsValueMatrixEnabled || mValues.contains(null)) {
+                final List<Line> lines = new ArrayList<>(mLines.size());
+                for (int j = 0; j < mLines.size(); j++) {
+                    Line line = mLines.get(j);
+                    if (mValues.get(j) == null) {
+                        // backed by a buffer, kept as is
+                        lines.add(line);
+                        continue;
+                    }
+                    LineValues values = mIsValueCompressionEnabled
+                            ? new XorCompressedValues(mValues.get(j))
+                            : LineValues.encode(mValues.get(j), mMaxValueError);
+                    lines.add(new Line(values, j, line.getName(), line.getColor()));
+                }
+                return new Chart(mName, mPoints, lines, null);
+            }
+            // the value of line j at point i is at i * lineCount + j
+            final int pointCount = mPoints.size();
+            final int lineCount = mLines.size();
+            final long matrixSize = (long) pointCount * lineCount;
+            if (matrixSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many values for the value matrix: " + matrixSize);
+            }
+            final float[] matrix = new float[(int) matrixSize];
+            final List<Line> lines = new ArrayList<>(lineCount);
+            for (int j = 0; j < lineCount; j++) {
+                Line line = mLines.get(j);
+                for (int i = 0; i < pointCount; i++) {
+                    matrix[i * lineCount + j] = line.getValueAt(i);
+                }
+                lines.add(new Line(new LineValues.FloatValues(matrix, j, lineCount, pointCount),
+                        j, line.getName(), line.getColor()));
+            }
+            return new Chart(mName, mPoints, lines, matrix);
         }
     }
 
     private String mChartName;
     private List<Point> mPoints;
     private List<Line> mLines;
+    private float[] mValueMatrix;
 
-    private Chart(String name, List<Point> points, List<Line> lines) {
+    private Chart(String name, List<Point> points, List<Line> lines, float[] valueMatrix) {
         this.mChartName = name;
         this.mPoints = points;
         this.mLines = lines;
+        this.mValueMatrix = valueMatrix;
     }
 
     List<Point> getPoints() {
@@ -55,6 +175,12 @@ public final class Chart {
         return mLines;
     }
 
+    // Index-major values of all lines, null if the matrix isn't enabled
+    /* Nullable */
+    float[] getValueMatrix() {
+        return mValueMatrix;
+    }
+
     public String getChartName() {
         return mChartName;
     }
@@ -71,6 +197,41 @@ public final class Chart {
         return mPoints.get(index).stamp;
     }
 
+    /**
+     * Returns the relative X position of the point in range 0..1;
+     */
+    public float getXPositionAt(int index) {
+        return CommonHelper.calcPointRelativePositionAt(mPoints, index);
+    }
+
+    /**
+     * Finds statistics of the line values at the points between the X positions, both inclusive;
+     * The first query for a line builds its index in O(n) on the calling thread, next queries take constant time;
+     * A chart set with {@link ChartModel#setChartAsync} has the indices built in the background already;
+     */
+    public RangeStats getRangeStats(Line line, float startXPosition, float stopXPosition) {
+        RangeStats stats = new RangeStats();
+        getRangeStats(line, startXPosition, stopXPosition, stats);
+        return stats;
+    }
+
+    /**
+     * Same as {@link #getRangeStats(Line, float, float)}, but writes the result to the given instance;
+     */
+    public void getRangeStats(Line line, float startXPosition, float stopXPosition, RangeStats out) {
+        if (mPoints.isEmpty()) {
+            out.clear();
+            return;
+        }
+        final long minStamp = mPoints.get(0).stamp;
+        final long maxStamp = mPoints.get(mPoints.size() - 1).stamp;
+        final long fromStamp = (long) Math.ceil(minStamp + (double) (maxStamp - minStamp) * startXPosition);
+        final long toStamp = (long) Math.floor(minStamp + (double) (maxStamp - minStamp) * stopXPosition);
+        final int fromIndex = CommonHelper.findFirstPointIndexFrom(mPoints, fromStamp);
+        final int toIndex = CommonHelper.findFirstPointIndexFrom(mPoints, toStamp + 1) - 1;
+        line.getStats().query(out, fromIndex, toIndex);
+    }
+
     public int findStampIndex(long stamp) {
         for (int i = 0; i < mPoints.size(); i++) {
             if (mPoints.get(i).stamp == stamp) {
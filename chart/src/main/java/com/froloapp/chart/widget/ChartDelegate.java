@@ -5,12 +5,13 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 
 import com.froloapp.chart.R;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
 
 
@@ -24,22 +25,72 @@ final class ChartDelegate {
     private static final float DEFAULT_LINE_STROKE_WIDTH_IN_DP = 1.0f;
     private static final float DEFAULT_SELECTED_LINE_DOT_RADIUS_IN_DP = 4.0f;
 
-    private static class MinMax {
-        float min;
-        float max;
-    }
+    // The lines layer is shifted instead of being repainted only if the window width
+    // has changed by less than this number of pixels
+    private static final float MAX_SCROLL_SCALE_ERROR_IN_PX = 0.5f;
+
+    private final ChartHost mView;
+
+    // Axes and lines are cached in separate layers (see ChartLayers for what a layer is on each canvas),
+    // the selected X position is drawn over them directly as it changes most often
+    private final ChartLayers mLayers;
+    private final ChartHost mLinesHost;
+
+    private final ChartLayers.Painter mLayerPainter = new ChartLayers.Painter() {
+        @Override public void drawLayer(int layer, Canvas canvas) {
+            switch (layer) {
+                case ChartLayers.LAYER_X_AXIS:
+                    mXAxisDelegate.draw(canvas);
+                    break;
+                case ChartLayers.LAYER_Y_AXIS:
+                    mYAxisDelegate.draw(canvas);
+                    break;
+                case ChartLayers.LAYER_LINES:
+                    drawLines(canvas);
+                    break;
+            }
+        }
+
+        @Override public boolean scrollLayer(int layer) {
+            return layer == ChartLayers.LAYER_LINES && scrollLines();
+        }
+    };
 
-    private final AbsChartView mView;
+    // The window and Y range the lines layer was painted for
+    private float mLinesLayerStartXPosition;
+    private float mLinesLayerStopXPosition;
+    private float mLinesLayerMinValue;
+    private float mLinesLayerMaxValue;
 
     // Delegate helpers
     private final YAxisDelegate mYAxisDelegate;
     private final XAxisDelegate mXAxisDelegate;
+    private final TooltipDelegate mTooltipDelegate;
     private final List<LineDelegate> mLineDelegates = new ArrayList<>();
+    // Delegates left from previous charts, ready to be reused
+    private final List<LineDelegate> mRecycledLineDelegates = new ArrayList<>();
 
     private boolean mWillDrawXAxis = true;
     private boolean mWillDrawYAxis = true;
 
-    private List<Point> mPoints = Collections.emptyList();
+    // Render quality, applied to every line delegate
+    private float mMaxVerticesPerPixel = 0f; // 0 means no limit
+    private boolean mAntiAlias = true;
+
+    // Data and everything derived from it may be shared with other views.
+    // The model is observed only while attached, so a shared model doesn't keep detached views
+    private ChartModel mModel = new ChartModel();
+    private boolean mIsAttached = false;
+
+    private final ChartModel.Observer mModelObserver = new ChartModel.Observer() {
+        @Override public void onChartChanged(ChartModel model, boolean animate) {
+            ChartDelegate.this.onChartChanged(animate);
+        }
+
+        @Override public void onLineVisibilitiesChanged(ChartModel model, BitSet changedLines, boolean animate) {
+            ChartDelegate.this.onLineVisibilitiesChanged(changedLines, animate);
+        }
+    };
 
     private float mStartXPosition = 0f;
     private float mStopXPosition = 1f;
@@ -47,23 +98,36 @@ final class ChartDelegate {
     // Special vertical line is drawn at this X position
     // If it is in range 0..1
     private float mSelectedXPosition = -1f;
+    // Index of the point closest to the selected X position, resolved once per selection change.
+    // -1 means no point is selected
+    private int mSelectedIndex = -1;
 
-    // Caching local minimums and maximums for optimization
-    private final List<Float> mLocalMin = new ArrayList<>();
-    private final List<Float> mLocalMax = new ArrayList<>();
+    // Maps each content pixel column to the index of the closest point, -1 if the column is out of the chart.
+    // It's rebuilt lazily after the window, the size or the points change
+    private int[] mColumnIndices = new int[0];
+    private int mColumnCount = 0;
+    private boolean mIsColumnIndicesValid = false;
 
     // A try to reuse the same instance for further optimizations
-    private final MinMax mMinMax = new MinMax();
+    private final ChartModel.MinMax mMinMax = new ChartModel.MinMax();
+
+    // Follows min and max of the window while it's panned, range queries are used on jumps and zooms
+    private final SlidingMinMax mSlidingMinMax = new SlidingMinMax();
 
     // Paint tools
     private final Paint mPaint;
     private final Paint mDotPaint;
     private final float mSelectedXPositionDotRadius;
 
-    ChartDelegate(AbsChartView view) {
+    ChartDelegate(ChartHost view) {
         this.mView = view;
-        this.mXAxisDelegate = new XAxisDelegate(view);
-        this.mYAxisDelegate = new YAxisDelegate(view);
+        this.mLayers = new ChartLayers(view);
+        this.mLinesHost = mLayers.wrap(ChartLayers.LAYER_LINES);
+        this.mXAxisDelegate = new XAxisDelegate(mLayers.wrap(ChartLayers.LAYER_X_AXIS));
+        // Y axis animations move the lines too
+        this.mYAxisDelegate = new YAxisDelegate(mLayers.wrap(ChartLayers.LAYER_Y_AXIS | ChartLayers.LAYER_LINES));
+        // the tooltip follows the selection, so it's not cached
+        this.mTooltipDelegate = new TooltipDelegate(view);
 
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setStyle(Paint.Style.FILL);
@@ -80,133 +144,23 @@ final class ChartDelegate {
                 view.getContext());
     }
 
-    // finds min value for the given index
-    private float findMinValueAt(int index) {
-        boolean atLeastOneLineVisible = false;
-        float min = Float.MAX_VALUE;
-
-        for (LineDelegate helper : mLineDelegates) {
-            if (!helper.isVisible()) {
-                // the line is invisible => skip it
-                continue;
-            }
-
-            atLeastOneLineVisible = true;
-
-            Line line = helper.getLine();
-            float value = line.getValueAt(index);
-            if (value < min) {
-                min = value;
-            }
-        }
-        if (atLeastOneLineVisible) {
-            return min;
-        } else return 0f; // by default min is 0
-    }
-
-    // finds max value for the given index
-    private float findMaxValueAt(int index) {
-        boolean atLeastOneLineVisible = false;
-        float max = Float.MIN_VALUE;
-
-        for (LineDelegate helper : mLineDelegates) {
-            if (!helper.isVisible()) {
-                // the line is invisible => skip it
-                continue;
-            }
-
-            atLeastOneLineVisible = true;
-
-            Line line = helper.getLine();
-            float value = line.getValueAt(index);
-            if (value > max) {
-                max = value;
-            }
-        }
-        if (atLeastOneLineVisible) {
-            return max;
-        } else return 10f; // by default max is 10
-    }
-
-    private float getMinValueAt(int index) {
-        return mLocalMin.get(index);
-    }
-
-    private float getMaxValueAt(int index) {
-        return mLocalMax.get(index);
-    }
-
-    private void calcLocalMinAndMAx() {
-        mLocalMin.clear();
-        mLocalMax.clear();
-        for (int i = 0; i < mPoints.size(); i++) {
-            float minValue = findMinValueAt(i);
-            float maxValue = findMaxValueAt(i);
-            mLocalMin.add(minValue);
-            mLocalMax.add(maxValue);
-        }
+    private void dispatchMinAndMaxInRange(boolean animate) {
+        findLocalMinMax(mMinMax);
+        mYAxisDelegate.setMaxAndMin(mMinMax.min, mMinMax.max, animate);
     }
 
-    private void findLocalMinMax(MinMax holder, float fromXPosition, float toXPosition) {
-        if (mPoints.isEmpty()) {
+    private void findLocalMinMax(ChartModel.MinMax holder) {
+        final ChartModel model = mModel;
+        if (model.getPoints().isEmpty()) {
             return;
         }
-
-        long startStamp = mPoints.get(0).stamp;
-        long stopStamp = mPoints.get(mPoints.size() - 1).stamp;
-
-        long fromStamp = (long) (startStamp + (stopStamp - startStamp) * fromXPosition) - 1;
-        long toStamp = (long) (startStamp + (stopStamp - startStamp) * toXPosition) + 1;
-
-        float min = Float.MAX_VALUE;
-        float max = Float.MIN_VALUE;
-
-        for (int i = 0; i < mPoints.size(); i++) {
-            long stamp = mPoints.get(i).stamp;
-            if (stamp < fromStamp) {
-                if (i < mPoints.size() - 1) {
-                    // check if the next axis is in the bounds
-                    long nextStamp = mPoints.get(i + 1).stamp;
-                    if (nextStamp >= fromStamp) {
-                        float localMin = getMinValueAt(i);
-                        if (localMin < min) {
-                            min = localMin;
-                        }
-                        float localMax = getMaxValueAt(i);
-                        if (localMax > max) {
-                            max = localMax;
-                        }
-                    }
-                }
-                continue;
-            }
-            if (stamp > toStamp) {
-                float localMin = getMinValueAt(i);
-                if (localMin < min) {
-                    min = localMin;
-                }
-                float localMax = getMaxValueAt(i);
-                if (localMax > max) {
-                    max = localMax;
-                }
-                break;
-            }
-            float localMin = getMinValueAt(i);
-            if (localMin < min) {
-                min = localMin;
-            }
-            float localMax = getMaxValueAt(i);
-            if (localMax > max) {
-                max = localMax;
-            }
+        final int fromIndex = model.findFromIndex(mStartXPosition);
+        final int toIndex = model.findToIndex(mStopXPosition);
+        if (mSlidingMinMax.moveTo(model.getLocalMin(), model.getLocalMax(), fromIndex, toIndex)) {
+            ChartModel.setLocalMinMax(holder, mSlidingMinMax.getMin(), mSlidingMinMax.getMax());
+        } else {
+            model.findLocalMinMax(holder, fromIndex, toIndex);
         }
-        holder.min = min;
-        holder.max = max;
-    }
-
-    private void dispatchMinAndMaxInRange(boolean animate) {
-        findLocalMinMax(mMinMax, mStartXPosition, mStopXPosition);
-        mYAxisDelegate.setMaxAndMin(mMinMax.min, mMinMax.max, animate);
     }
 
     void loadAttributes(Context context, AttributeSet attrs) {
@@ -224,6 +178,20 @@ final class ChartDelegate {
 
         mXAxisDelegate.loadAttributes(context, attrs);
         mYAxisDelegate.loadAttributes(context, attrs);
+        mTooltipDelegate.loadAttributes(context, attrs);
+    }
+
+    boolean isTooltipEnabled() {
+        return mTooltipDelegate.isEnabled();
+    }
+
+    void setTooltipEnabled(boolean enabled) {
+        if (mTooltipDelegate.isEnabled() != enabled) {
+            mTooltipDelegate.setEnabled(enabled);
+            if (mSelectedIndex >= 0) {
+                mView.invalidate();
+            }
+        }
     }
 
     boolean willDrawXAxis() {
@@ -244,21 +212,105 @@ final class ChartDelegate {
         mView.requestLayout();
     }
 
-    void setChart(List<Point> points, List<Line> lines, boolean animate) {
-        mPoints = points;
+    ChartModel getModel() {
+        return mModel;
+    }
+
+    // Switches to another model, the view is brought up to date with it immediately
+    void setModel(ChartModel model) {
+        if (mModel == model) {
+            return;
+        }
+        mModel.removeObserver(mModelObserver);
+        mModel = model;
+        if (mIsAttached) {
+            model.addObserver(mModelObserver);
+        }
+        onChartChanged(false);
+    }
+
+    private void onChartChanged(boolean animate) {
+        final List<Point> points = mModel.getPoints();
+        final List<Line> lines = mModel.getLines();
+        final float[] pointXPositions = mModel.getPointXPositions();
         mXAxisDelegate.setPoints(points);
-        mLineDelegates.clear();
-        for (Line line : lines) {
-            LineDelegate helper = new LineDelegate(mView, points, line);
-            helper.setXPosition(mStartXPosition, mStopXPosition);
-            mLineDelegates.add(helper);
+
+        // Reusing line delegates along with their paints and animators
+        while (mLineDelegates.size() > lines.size()) {
+            LineDelegate helper = mLineDelegates.remove(mLineDelegates.size() - 1);
+            helper.detach();
+            mRecycledLineDelegates.add(helper);
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            LineDelegate helper;
+            if (i < mLineDelegates.size()) {
+                helper = mLineDelegates.get(i);
+                helper.setLine(points, pointXPositions, line);
+            } else if (!mRecycledLineDelegates.isEmpty()) {
+                helper = mRecycledLineDelegates.remove(mRecycledLineDelegates.size() - 1);
+                helper.setLine(points, pointXPositions, line);
+                helper.setXPosition(mStartXPosition, mStopXPosition);
+                helper.setRenderQuality(mMaxVerticesPerPixel, mAntiAlias);
+                mLineDelegates.add(helper);
+            } else {
+                helper = new LineDelegate(mLinesHost, points, pointXPositions, line);
+                helper.setXPosition(mStartXPosition, mStopXPosition);
+                helper.setRenderQuality(mMaxVerticesPerPixel, mAntiAlias);
+                mLineDelegates.add(helper);
+            }
+            // setLine makes the line visible, but a model may come with hidden lines
+            if (!mModel.isLineVisibleAt(i)) {
+                helper.hide(false);
+            }
+        }
+
+        mTooltipDelegate.setLineCount(lines.size());
+        mSlidingMinMax.invalidate();
+
+        // the selected position stays, but it may point to another index now
+        mIsColumnIndicesValid = false;
+        mSelectedIndex = findPointIndexAt(mSelectedXPosition);
+
+        dispatchMinAndMaxInRange(animate);
+        mLayers.invalidate(ChartLayers.ALL_LAYERS);
+    }
+
+    private void onLineVisibilitiesChanged(BitSet changedLines, boolean animate) {
+        // the local values have changed
+        mSlidingMinMax.invalidate();
+        for (int i = changedLines.nextSetBit(0); i >= 0; i = changedLines.nextSetBit(i + 1)) {
+            LineDelegate helper = mLineDelegates.get(i);
+            if (mModel.isLineVisibleAt(i)) {
+                helper.show(animate);
+            } else {
+                helper.hide(animate);
+            }
         }
-        calcLocalMinAndMAx();
+        // the Y range is animated once for all the lines
         dispatchMinAndMaxInRange(animate);
     }
 
+    void setLayerCacheEnabled(boolean enabled) {
+        mLayers.setEnabled(enabled);
+    }
+
+    // Trades drawing quality for speed:
+    // maxVerticesPerPixel limits vertex density of lines (0 means no limit),
+    // antiAlias toggles anti-aliasing of lines,
+    // phantomLabels toggles drawing of fading axis labels during transitions.
+    void setRenderQuality(float maxVerticesPerPixel, boolean antiAlias, boolean phantomLabels) {
+        mMaxVerticesPerPixel = maxVerticesPerPixel;
+        mAntiAlias = antiAlias;
+        for (LineDelegate helper : mLineDelegates) {
+            helper.setRenderQuality(maxVerticesPerPixel, antiAlias);
+        }
+        mXAxisDelegate.setWillDrawPhantomPoints(phantomLabels);
+        mYAxisDelegate.setWillDrawPhantomLines(phantomLabels);
+    }
+
     List<Point> getPoints() {
-        return mPoints;
+        return mModel.getPoints();
     }
 
     float getStartXPosition() {
@@ -272,133 +324,165 @@ final class ChartDelegate {
     void setXPositions(float startXPosition, float stopXPosition, boolean animate) {
         this.mStartXPosition = startXPosition;
         this.mStopXPosition = stopXPosition;
+        mIsColumnIndicesValid = false;
         mXAxisDelegate.setXPositions(startXPosition, stopXPosition, animate);
+        mLayers.invalidate(ChartLayers.LAYER_X_AXIS);
         for (LineDelegate helper : mLineDelegates) {
             helper.setXPosition(startXPosition, stopXPosition);
         }
+        // If the Y range changes, the Y axis delegate repaints the lines entirely
+        mLayers.invalidateScrolled(ChartLayers.LAYER_LINES);
         dispatchMinAndMaxInRange(animate);
     }
 
+    // Returns the index of the selected point or -1
+    int getSelectedIndex() {
+        return mSelectedIndex;
+    }
+
     void setSelectedXPosition(float targetXPosition) {
         this.mSelectedXPosition = targetXPosition;
-        mView.invalidate();
+        setSelectedIndex(findPointIndexAt(targetXPosition));
     }
 
     void clearSelectedXPosition() {
         this.mSelectedXPosition = -1f;
-        mView.invalidate();
-    }
-
-    int getLineCount() {
-        return mLineDelegates.size();
-    }
+        setSelectedIndex(-1);
+    }
+
+    // Finds the visible line, which value at the X coordinate is the closest to the Y coordinate
+    /*nullable*/ Line findClosestLine(float xCoordinate, float yCoordinate) {
+        final float xPosition = CommonHelper.calcCoordinateRelativePosition(
+                mView,
+                mStartXPosition,
+                mStopXPosition,
+                xCoordinate);
+        final int index = findPointIndexAt(xPosition);
+        if (index < 0) {
+            return null;
+        }
 
-    Line getLineAt(int index) {
-        return mLineDelegates.get(index).getLine();
+        // Y coordinates are linear to values, so the closest value is the closest line
+        final float targetValue = CommonHelper.findValueAtYCoordinate(
+                mView,
+                mYAxisDelegate.getCurrentMinValue(),
+                mYAxisDelegate.getCurrentMaxValue(),
+                yCoordinate);
+        return mModel.findClosestVisibleLine(index, targetValue);
     }
 
-    boolean isLineVisible(Line line) {
-        for (LineDelegate helper : mLineDelegates) {
-            if (helper.getLine().equals(line)) {
-                return helper.isVisible();
+    private int findPointIndexAt(float xPosition) {
+        if (xPosition < 0.0f || xPosition > 1.0f) {
+            return -1;
+        }
+        if (!mIsColumnIndicesValid) {
+            buildColumnIndices();
+        }
+        final float range = mStopXPosition - mStartXPosition;
+        if (range > 0f && mColumnCount > 0
+                && xPosition >= mStartXPosition && xPosition <= mStopXPosition) {
+            // the stop position itself falls right past the last column
+            int column = (int) Math.floor((xPosition - mStartXPosition) / range * mColumnCount);
+            column = Math.max(0, Math.min(mColumnCount - 1, column));
+            int index = mColumnIndices[column];
+            if (index >= 0) {
+                return index;
             }
         }
-        return false;
+        // the position is out of the window, searching for it directly
+        final List<Point> points = mModel.getPoints();
+        if (xPosition >= 1.0f) {
+            return points.size() - 1;
+        }
+        return CommonHelper.getClosestPointIndex(points, xPosition);
     }
 
-    int getVisibleLineCount() {
-        int count = 0;
-        for (LineDelegate helper : mLineDelegates) {
-            if (helper.isVisible()) {
-                count++;
+    private void buildColumnIndices() {
+        final int contentWidth = mView.getMeasuredWidth() - mView.getPaddingLeft() - mView.getPaddingRight();
+        final int columnCount = Math.max(0, contentWidth);
+        if (mColumnIndices.length < columnCount) {
+            mColumnIndices = new int[columnCount];
+        }
+        final int pointCount = mModel.getPoints().size();
+        final float[] positions = mModel.getPointXPositions();
+        final float range = mStopXPosition - mStartXPosition;
+        // the sweep starts at the point just before the window, not at the first one
+        int index = 0;
+        if (pointCount > 0 && columnCount > 0) {
+            final List<Point> points = mModel.getPoints();
+            final long minStamp = points.get(0).stamp;
+            final long maxStamp = points.get(pointCount - 1).stamp;
+            final float firstXPosition = Math.max(0f, mStartXPosition + 0.5f * range / columnCount);
+            final long firstStamp = minStamp + (long) ((maxStamp - minStamp) * (double) firstXPosition);
+            index = Math.min(pointCount - 1,
+                    Math.max(0, CommonHelper.findFirstPointIndexFrom(points, firstStamp) - 1));
+        }
+        for (int column = 0; column < columnCount; column++) {
+            // the middle of the column
+            float xPosition = mStartXPosition + (column + 0.5f) * range / columnCount;
+            if (pointCount == 0 || xPosition < 0f || xPosition > 1f) {
+                mColumnIndices[column] = -1;
+                continue;
             }
+            // columns go from left to right, so the closest point may only move forward
+            while (index < pointCount - 1
+                    && Math.abs(positions[index + 1] - xPosition) <= Math.abs(positions[index] - xPosition)) {
+                index++;
+            }
+            mColumnIndices[column] = index;
         }
-        return count;
+        mColumnCount = columnCount;
+        mIsColumnIndicesValid = true;
     }
 
-    void show(Line line, boolean animate) {
-        setLineVisibility(line, true, animate);
+    private void setSelectedIndex(int index) {
+        final int oldIndex = mSelectedIndex;
+        if (oldIndex == index) {
+            // the selection snaps to the same point, nothing to redraw
+            return;
+        }
+        mSelectedIndex = index;
+        // only the strips around the old and the new selection lines change
+        invalidateSelectionStrip(oldIndex);
+        invalidateSelectionStrip(index);
     }
 
-    void hide(Line line, boolean animate) {
-        setLineVisibility(line, false, animate);
+    private void invalidateSelectionStrip(int index) {
+        if (index < 0) {
+            return;
+        }
+        final float xCoordinate = findSelectedXCoordinate(index);
+        // wide enough to cover the selection line and the dots on it
+        final float halfWidth = Math.max(mSelectedXPositionDotRadius, mPaint.getStrokeWidth() / 2f) + 1f;
+        mView.invalidate(
+                (int) Math.floor(xCoordinate - halfWidth),
+                0,
+                (int) Math.ceil(xCoordinate + halfWidth),
+                mView.getMeasuredHeight());
+
+        if (mTooltipDelegate.isEnabled()) {
+            mTooltipDelegate.layout(mModel.getPoints().get(index), index, xCoordinate, mLineDelegates);
+            RectF bounds = mTooltipDelegate.getBounds();
+            mView.invalidate(
+                    (int) Math.floor(bounds.left) - 1,
+                    (int) Math.floor(bounds.top) - 1,
+                    (int) Math.ceil(bounds.right) + 1,
+                    (int) Math.ceil(bounds.bottom) + 1);
+        }
     }
 
-    private void setLineVisibility(Line targetLine, boolean isVisible, boolean animate) {
-        if (isVisible && getVisibleLineCount() == 0) {
-            for (LineDelegate helper : mLineDelegates) {
-                Line line = helper.getLine();
-                if (line.equals(targetLine)) {
-                    helper.show(animate);
-                }
-            }
-            // Full recalculation
-            calcLocalMinAndMAx();
-            dispatchMinAndMaxInRange(animate);
-        } else {
-            // optimized way (recalculation just for local timestamps if needed)
-            for (int i = 0; i < mLineDelegates.size(); i++) {
-                LineDelegate helper = mLineDelegates.get(i);
-                Line line = helper.getLine();
-                if (line.equals(targetLine)) {
-
-                    if (isVisible) {
-                        helper.show(animate);
-                    } else {
-                        helper.hide(animate);
-                    }
-
-                    for (int j = 0; j < mPoints.size(); j++) {
-
-                        float value = line.getValueAt(j);
-
-                        float currMinValue = mLocalMin.get(j);
-                        float currMaxValue = mLocalMax.get(j);
-
-                        if (isVisible) {
-                            if (value < currMinValue) {
-                                mLocalMin.set(j, value);
-                            }
-                            if (value > currMaxValue) {
-                                mLocalMax.set(j, value);
-                            }
-                        } else {
-                            if (value <= currMinValue) {
-                                float newMinValue = findMinValueAt(j);
-                                mLocalMin.set(j, newMinValue);
-                            }
-                            if (value >= currMaxValue) {
-                                float newMaxValue = findMaxValueAt(j);
-                                mLocalMax.set(j, newMaxValue);
-                            }
-                        }
-                    }
-                    break;
-                }
-            }
-            dispatchMinAndMaxInRange(animate);
-        }
+    private float findSelectedXCoordinate(int index) {
+        return CommonHelper.findXCoordinate(
+                mView,
+                mStartXPosition,
+                mStopXPosition,
+                mModel.getPointXPositions()[index]);
     }
 
     private void drawSelectedXPositionLine(Canvas canvas) {
-        if (mSelectedXPosition >= 0.0f
-                && mSelectedXPosition <= 1.0f) {
-
-            // At first, normalizing X position
-
-            int index = CommonHelper.getClosestPointIndex(
-                    mPoints,
-                    mSelectedXPosition);
-
-            float correctXPosition = CommonHelper.calcPointRelativePositionAt(
-                    mPoints,
-                    index);
-
-            float xCoordinate = CommonHelper.findXCoordinate(
-                    mView,
-                    mStartXPosition,
-                    mStopXPosition,
-                    correctXPosition);
+        final int index = mSelectedIndex;
+        if (index >= 0) {
+            float xCoordinate = findSelectedXCoordinate(index);
 
             float yTop = mView.getPaddingTop();
             float yBottom = mView.getMeasuredHeight() - mView.getPaddingBottom() - mView.getFooterHeight();
@@ -413,24 +497,9 @@ final class ChartDelegate {
     }
 
     private void drawSelectedXPositionDots(Canvas canvas) {
-        if (mSelectedXPosition >= 0.0f
-                && mSelectedXPosition <= 1.0f) {
-
-            // At first, normalizing X position
-
-            int index = CommonHelper.getClosestPointIndex(
-                    mPoints,
-                    mSelectedXPosition);
-
-            float correctXPosition = CommonHelper.calcPointRelativePositionAt(
-                    mPoints,
-                    index);
-
-            float xCoordinate = CommonHelper.findXCoordinate(
-                    mView,
-                    mStartXPosition,
-                    mStopXPosition,
-                    correctXPosition);
+        final int index = mSelectedIndex;
+        if (index >= 0) {
+            float xCoordinate = findSelectedXCoordinate(index);
 
             for (LineDelegate helper : mLineDelegates) {
                 if (helper.isVisible()) {
@@ -456,28 +525,131 @@ final class ChartDelegate {
         }
     }
 
+    private void drawLines(Canvas canvas) {
+        mLinesLayerStartXPosition = mStartXPosition;
+        mLinesLayerStopXPosition = mStopXPosition;
+        mLinesLayerMinValue = mYAxisDelegate.getCurrentMinValue();
+        mLinesLayerMaxValue = mYAxisDelegate.getCurrentMaxValue();
+        // lines are drawn a couple of points past the window, those parts are cut at the content bounds
+        int saveCount = canvas.save();
+        canvas.clipRect(
+                mView.getPaddingLeft(),
+                0,
+                mView.getMeasuredWidth() - mView.getPaddingRight(),
+                mView.getMeasuredHeight());
+        for (LineDelegate helper : mLineDelegates) {
+            helper.draw(
+                    canvas,
+                    mYAxisDelegate.getCurrentMinValue(),
+                    mYAxisDelegate.getCurrentMaxValue());
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    // Pan fast path: if the window has moved without resizing and the Y range is the same,
+    // shifts the lines layer and paints only the exposed strip.
+    // It applies to software rendering only: on a hardware canvas the lines layer isn't a bitmap (see ChartLayers),
+    // so the lines are drawn entirely on every pan frame.
+    // Returns false if the layer must be repainted entirely.
+    private boolean scrollLines() {
+        final float minValue = mYAxisDelegate.getCurrentMinValue();
+        final float maxValue = mYAxisDelegate.getCurrentMaxValue();
+        if (minValue != mLinesLayerMinValue || maxValue != mLinesLayerMaxValue) {
+            return false;
+        }
+
+        final int contentWidth = mView.getMeasuredWidth() - mView.getPaddingLeft() - mView.getPaddingRight();
+        final float layerRange = mLinesLayerStopXPosition - mLinesLayerStartXPosition;
+        final float range = mStopXPosition - mStartXPosition;
+        if (contentWidth <= 0 || layerRange <= 0f) {
+            return false;
+        }
+        if (Math.abs(range - layerRange) * contentWidth / layerRange > MAX_SCROLL_SCALE_ERROR_IN_PX) {
+            return false;
+        }
+
+        final float pxPerXPosition = contentWidth / layerRange;
+        final int dx = Math.round((mLinesLayerStartXPosition - mStartXPosition) * pxPerXPosition);
+        if (Math.abs(dx) >= contentWidth) {
+            return false;
+        }
+
+        if (dx != 0) {
+            // lines are painted within the content bounds only, so the shifted content is valid there
+            final int contentLeft = mView.getPaddingLeft();
+            final int contentRight = mView.getMeasuredWidth() - mView.getPaddingRight();
+            Canvas canvas = mLayers.shift(ChartLayers.LAYER_LINES, dx, contentLeft, contentRight);
+
+            // the layer now shows the window moved by whole pixels
+            final float layerStartXPosition = mLinesLayerStartXPosition - dx / pxPerXPosition;
+            final float layerStopXPosition = layerStartXPosition + layerRange;
+
+            // exposed strip
+            final int left = dx > 0 ? contentLeft : contentRight + dx;
+            final int right = dx > 0 ? contentLeft + dx : contentRight;
+            final float fromXPosition = layerStartXPosition
+                    + (left - mView.getPaddingLeft()) / pxPerXPosition;
+            final float toXPosition = layerStartXPosition
+                    + (right - mView.getPaddingLeft()) / pxPerXPosition;
+
+            int saveCount = canvas.save();
+            canvas.clipRect(left, 0, right, mView.getMeasuredHeight());
+            for (LineDelegate helper : mLineDelegates) {
+                helper.draw(
+                        canvas,
+                        minValue,
+                        maxValue,
+                        layerStartXPosition,
+                        layerStopXPosition,
+                        fromXPosition,
+                        toXPosition);
+            }
+            canvas.restoreToCount(saveCount);
+
+            mLinesLayerStartXPosition = layerStartXPosition;
+            mLinesLayerStopXPosition = layerStopXPosition;
+        }
+
+        // the rest is less than a pixel
+        mLayers.setOffset(ChartLayers.LAYER_LINES,
+                (mLinesLayerStartXPosition - mStartXPosition) * pxPerXPosition);
+        return true;
+    }
+
     void draw(Canvas canvas) {
         // draw selected X position line at first
         drawSelectedXPositionLine(canvas);
 
         if (mWillDrawXAxis) {
-            mXAxisDelegate.draw(canvas);
+            mLayers.draw(canvas, ChartLayers.LAYER_X_AXIS, mLayerPainter);
         }
         if (mWillDrawYAxis) {
-            mYAxisDelegate.draw(canvas);
-        }
-        for (LineDelegate helper : mLineDelegates) {
-            helper.draw(
-                    canvas,
-                    mYAxisDelegate.getCurrentMinValue(),
-                    mYAxisDelegate.getCurrentMaxValue());
+            mLayers.draw(canvas, ChartLayers.LAYER_Y_AXIS, mLayerPainter);
         }
+        mLayers.draw(canvas, ChartLayers.LAYER_LINES, mLayerPainter);
 
         // draw selected X position dots at last
         drawSelectedXPositionDots(canvas);
+
+        // the tooltip covers everything
+        final int selectedIndex = mSelectedIndex;
+        if (selectedIndex >= 0 && mTooltipDelegate.isEnabled()) {
+            mTooltipDelegate.draw(
+                    canvas,
+                    mModel.getPoints().get(selectedIndex),
+                    selectedIndex,
+                    findSelectedXCoordinate(selectedIndex),
+                    mLineDelegates);
+        }
     }
 
     void attach() {
+        mIsAttached = true;
+        mModel.addObserver(mModelObserver);
+        if (!mModel.getPoints().isEmpty()) {
+            // the model may have changed while detached
+            onChartChanged(false);
+        }
         mXAxisDelegate.attach();
         mYAxisDelegate.attach();
         for (LineDelegate helper : mLineDelegates) {
@@ -486,6 +658,8 @@ final class ChartDelegate {
     }
 
     void measured() {
+        mIsColumnIndicesValid = false;
+        mLayers.invalidate(ChartLayers.ALL_LAYERS);
         mXAxisDelegate.measured();
         mYAxisDelegate.measured();
         for (LineDelegate helper : mLineDelegates) {
@@ -494,6 +668,9 @@ final class ChartDelegate {
     }
 
     void detach() {
+        mIsAttached = false;
+        mModel.removeObserver(mModelObserver);
+        mLayers.release();
         mXAxisDelegate.detach();
         mYAxisDelegate.detach();
         for (LineDelegate helper : mLineDelegates) {
@@ -0,0 +1,33 @@
+package com.froloapp.chart.widget;
+
+import android.content.Context;
+
+
+// Everything the delegates need to know about the thing they draw on.
+// Implemented by AbsChartView (UI thread) and ChartSurfaceView (render thread).
+interface ChartHost {
+    Context getContext();
+
+    int getMeasuredWidth();
+
+    int getMeasuredHeight();
+
+    int getPaddingLeft();
+
+    int getPaddingTop();
+
+    int getPaddingRight();
+
+    int getPaddingBottom();
+
+    int getFooterHeight();
+
+    void setFooterHeight(int height);
+
+    void invalidate();
+
+    // Invalidates only the given rectangle, in host coordinates
+    void invalidate(int left, int top, int right, int bottom);
+
+    void requestLayout();
+}
@@ -0,0 +1,305 @@
+package com.froloapp.chart.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+
+// Caches parts of a chart separately, so that each part is redrawn only when its inputs change.
+// Delegates get their host through wrap(), invalidating such a host marks their layers dirty.
+// On a hardware canvas a layer is a render node (API 29+), which is re-recorded only when the layer is dirty,
+// so redrawing the selection over the layers doesn't draw them again. Older hardware canvases get the layers
+// drawn directly: rasterizing a bitmap and uploading it as a texture would cost more than drawing.
+// In software a layer is a bitmap. A layer that is dirty only because the window was scrolled may be shifted
+// instead of repainted, a layer that changes on consecutive frames is drawn directly until it settles.
+final class ChartLayers {
+
+    static final int LAYER_X_AXIS = 1;
+    static final int LAYER_Y_AXIS = 1 << 1;
+    static final int LAYER_LINES = 1 << 2;
+    static final int ALL_LAYERS = LAYER_X_AXIS | LAYER_Y_AXIS | LAYER_LINES;
+    // Shifting keeps these cached while they're scrolled on every frame
+    private static final int SCROLLABLE_LAYERS = LAYER_LINES;
+
+    private static final int LAYER_COUNT = 3;
+
+    interface Painter {
+        void drawLayer(int layer, Canvas canvas);
+
+        // Tries to bring the scrolled layer up to date by shifting it (see shift),
+        // returns false if the layer must be repainted
+        boolean scrollLayer(int layer);
+    }
+
+    private final ChartHost mHost;
+
+    private final Bitmap[] mBitmaps = new Bitmap[LAYER_COUNT];
+    private final Canvas[] mCanvases = new Canvas[LAYER_COUNT];
+    // Back buffers for shifting scrolled layers
+    private final Bitmap[] mBackBitmaps = new Bitmap[LAYER_COUNT];
+    private final Canvas[] mBackCanvases = new Canvas[LAYER_COUNT];
+    // Sub-pixel X offsets of the layer content, left after shifting by whole pixels
+    private final float[] mOffsets = new float[LAYER_COUNT];
+
+    // Layers recorded in render nodes, created on the first hardware draw
+    private LayerNodes mNodes;
+
+    private int mDirtyLayers = ALL_LAYERS;
+    // Layers that are dirty only because the window was scrolled
+    private int mScrolledLayers = 0;
+    // Layers invalidated since they were drawn last time
+    private int mChangedLayers = 0;
+    // Layers that were repainted on their last draw, a layer changed again is drawn directly
+    private int mRepaintedLayers = 0;
+
+    private boolean mIsEnabled = true;
+
+    ChartLayers(ChartHost host) {
+        this.mHost = host;
+    }
+
+    // Returns a host that marks the given layers dirty when it's invalidated
+    ChartHost wrap(final int layers) {
+        return new ChartHost() {
+            @Override public Context getContext() {
+                return mHost.getContext();
+            }
+            @Override public int getMeasuredWidth() {
+                return mHost.getMeasuredWidth();
+            }
+            @Override public int getMeasuredHeight() {
+                return mHost.getMeasuredHeight();
+            }
+            @Override public int getPaddingLeft() {
+                return mHost.getPaddingLeft();
+            }
+            @Override public int getPaddingTop() {
+                return mHost.getPaddingTop();
+            }
+            @Override public int getPaddingRight() {
+                return mHost.getPaddingRight();
+            }
+            @Override public int getPaddingBottom() {
+                return mHost.getPaddingBottom();
+            }
+            @Override public int getFooterHeight() {
+                return mHost.getFooterHeight();
+            }
+            @Override public void setFooterHeight(int height) {
+                // the footer affects positions of everything
+                mDirtyLayers = ALL_LAYERS;
+                mScrolledLayers = 0;
+                mChangedLayers = ALL_LAYERS;
+                mHost.setFooterHeight(height);
+            }
+            @Override public void invalidate() {
+                ChartLayers.this.invalidate(layers);
+            }
+            @Override public void invalidate(int left, int top, int right, int bottom) {
+                // cached layers are repainted entirely anyway
+                ChartLayers.this.invalidate(layers);
+            }
+            @Override public void requestLayout() {
+                mDirtyLayers |= layers;
+                mScrolledLayers &= ~layers;
+                mChangedLayers |= layers;
+                mHost.requestLayout();
+            }
+        };
+    }
+
+    void invalidate(int layers) {
+        mDirtyLayers |= layers;
+        mScrolledLayers &= ~layers;
+        mChangedLayers |= layers;
+        mHost.invalidate();
+    }
+
+    // Marks the layers dirty because the window was scrolled
+    void invalidateScrolled(int layers) {
+        mScrolledLayers |= layers & ~mDirtyLayers;
+        mDirtyLayers |= layers;
+        mChangedLayers |= layers;
+        mHost.invalidate();
+    }
+
+    // Shifts the cached content of the layer by dx pixels, keeping it within [left, right),
+    // returns a canvas to paint the exposed strip on
+    Canvas shift(int layer, int dx, int left, int right) {
+        final int index = Integer.numberOfTrailingZeros(layer);
+        final Bitmap front = mBitmaps[index];
+        Bitmap back = mBackBitmaps[index];
+        if (back == null || back.getWidth() != front.getWidth() || back.getHeight() != front.getHeight()) {
+            // the old bitmap isn't recycled, a display list may still reference it
+            back = Bitmap.createBitmap(front.getWidth(), front.getHeight(), Bitmap.Config.ARGB_8888);
+            mBackBitmaps[index] = back;
+            mBackCanvases[index] = new Canvas(back);
+        }
+
+        back.eraseColor(Color.TRANSPARENT);
+        final Canvas backCanvas = mBackCanvases[index];
+        int saveCount = backCanvas.save();
+        backCanvas.clipRect(left, 0, right, back.getHeight());
+        backCanvas.drawBitmap(front, dx, 0, null);
+        backCanvas.restoreToCount(saveCount);
+
+        // swap buffers
+        Canvas frontCanvas = mCanvases[index];
+        mBitmaps[index] = back;
+        mCanvases[index] = mBackCanvases[index];
+        mBackBitmaps[index] = front;
+        mBackCanvases[index] = frontCanvas;
+        return mCanvases[index];
+    }
+
+    void setOffset(int layer, float offset) {
+        mOffsets[Integer.numberOfTrailingZeros(layer)] = offset;
+    }
+
+    boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        if (mIsEnabled != enabled) {
+            mIsEnabled = enabled;
+            if (!enabled) {
+                release();
+            }
+            invalidate(ALL_LAYERS);
+        }
+    }
+
+    // Draws the layer from its cache, re-painting the cache if the layer is dirty
+    void draw(Canvas canvas, int layer, Painter painter) {
+        final int width = mHost.getMeasuredWidth();
+        final int height = mHost.getMeasuredHeight();
+        if (!mIsEnabled || width <= 0 || height <= 0) {
+            painter.drawLayer(layer, canvas);
+            return;
+        }
+
+        final int index = Integer.numberOfTrailingZeros(layer);
+        final boolean changed = (mChangedLayers & layer) != 0;
+        mChangedLayers &= ~layer;
+        if (canvas.isHardwareAccelerated()) {
+            // the bitmap, if any, doesn't match what is drawn anymore
+            dropBitmaps(index);
+            if (Build.VERSION.SDK_INT >= 29) {
+                if (mNodes == null) {
+                    mNodes = new LayerNodes();
+                }
+                mNodes.draw(canvas, index, layer, (mDirtyLayers & layer) != 0, width, height, painter);
+                mDirtyLayers &= ~layer;
+            } else {
+                painter.drawLayer(layer, canvas);
+                mDirtyLayers |= layer;
+            }
+            mScrolledLayers &= ~layer;
+            return;
+        }
+        if (mNodes != null) {
+            // the node doesn't match what is drawn anymore
+            mNodes.discard(index);
+        }
+
+        Bitmap bitmap = mBitmaps[index];
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            // the old bitmap isn't recycled, a display list may still reference it
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBitmaps[index] = bitmap;
+            mCanvases[index] = new Canvas(bitmap);
+            mDirtyLayers |= layer;
+            mScrolledLayers &= ~layer;
+        }
+
+        if ((mDirtyLayers & layer) == 0) {
+            // the layer has settled
+            mRepaintedLayers &= ~layer;
+        } else {
+            boolean scrolled = (mScrolledLayers & layer) != 0
+                    && painter.scrollLayer(layer);
+            if (!scrolled) {
+                if (changed && (mRepaintedLayers & layer & ~SCROLLABLE_LAYERS) != 0) {
+                    // the layer changes on every frame, caching it would only add a copy;
+                    // it stays dirty, so the cache is repainted once the layer settles
+                    mScrolledLayers &= ~layer;
+                    painter.drawLayer(layer, canvas);
+                    return;
+                }
+                bitmap = mBitmaps[index];
+                bitmap.eraseColor(Color.TRANSPARENT);
+                mOffsets[index] = 0f;
+                painter.drawLayer(layer, mCanvases[index]);
+            }
+            mDirtyLayers &= ~layer;
+            mScrolledLayers &= ~layer;
+            if (changed) {
+                mRepaintedLayers |= layer;
+            } else {
+                mRepaintedLayers &= ~layer;
+            }
+        }
+
+        canvas.drawBitmap(mBitmaps[index], mOffsets[index], 0, null);
+    }
+
+    private void dropBitmaps(int index) {
+        mBitmaps[index] = null;
+        mCanvases[index] = null;
+        mBackBitmaps[index] = null;
+        mBackCanvases[index] = null;
+        mOffsets[index] = 0f;
+    }
+
+    // Drops the caches, the bitmaps are left to the garbage collector
+    // as a display list may still reference them
+    void release() {
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            dropBitmaps(i);
+            if (mNodes != null) {
+                mNodes.discard(i);
+            }
+        }
+        mDirtyLayers = ALL_LAYERS;
+        mScrolledLayers = 0;
+        mChangedLayers = 0;
+        mRepaintedLayers = 0;
+    }
+
+    // Render nodes of the layers, loaded only on API 29+
+    private static final class LayerNodes {
+        private final RenderNode[] mNodes = new RenderNode[LAYER_COUNT];
+
+        void draw(Canvas canvas, int index, int layer, boolean dirty, int width, int height, Painter painter) {
+            RenderNode node = mNodes[index];
+            if (node == null) {
+                node = new RenderNode("ChartLayer" + index);
+                mNodes[index] = node;
+                dirty = true;
+            }
+            if (node.setPosition(0, 0, width, height) || !node.hasDisplayList()) {
+                dirty = true;
+            }
+            if (dirty) {
+                Canvas recordingCanvas = node.beginRecording(width, height);
+                try {
+                    painter.drawLayer(layer, recordingCanvas);
+                } finally {
+                    node.endRecording();
+                }
+            }
+            canvas.drawRenderNode(node);
+        }
+
+        void discard(int index) {
+            RenderNode node = mNodes[index];
+            if (node != null) {
+                node.discardDisplayList();
+            }
+        }
+    }
+}
@@ -0,0 +1,769 @@
+package com.froloapp.chart.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Holds a chart, visibility of its lines and everything derived from them:
+ * relative X positions of the points, local minimums and maximums and range min/max index;
+ * The derived data is computed once per change, no matter how many views show the model;
+ * Views attached with {@link ChartView#setModel(ChartModel)} or {@link ChartSlider#setModel(ChartModel)}
+ * follow the changes of the model automatically;
+ * The model isn't thread safe, it must be used on one thread: models shown by {@link ChartView} and
+ * {@link ChartSlider} belong to the main thread, {@link ChartSurfaceView} drives its private model
+ * on its render thread; {@link #setChartAsync} delivers its result to the main thread, so it's for main thread models only;
+ */
+public final class ChartModel {
+
+    private static final String PRECOMPUTE_THREAD_NAME = "ChartPrecomputeThread";
+
+    // Number of values of a line read at once when min and max are built
+    private static final int VALUE_CHUNK_SIZE = 1024;
+
+    /**
+     * Notified on the main thread when a chart set with {@link #setChartAsync} is shown or has failed;
+     */
+    public interface OnChartReadyListener {
+        void onChartReady(Chart chart);
+
+        /**
+         * Called if computing the chart has failed, e.g. with OutOfMemoryError; the current chart stays;
+         */
+        void onChartFailed(Chart chart, Throwable error);
+    }
+
+    // Views are notified through this interface
+    interface Observer {
+        void onChartChanged(ChartModel model, boolean animate);
+
+        // changedLines has the bits of the lines, which visibility has been toggled.
+        // It's reused by the model, so observers must not keep it
+        void onLineVisibilitiesChanged(ChartModel model, BitSet changedLines, boolean animate);
+    }
+
+    static final class MinMax {
+        float min;
+        float max;
+    }
+
+    private final List<Observer> mObservers = new ArrayList<>();
+
+    private Chart mChart;
+    private List<Point> mPoints = Collections.emptyList();
+    private List<Line> mLines = Collections.emptyList();
+
+    // Bit i is set if line i is visible, the count is maintained on each toggle
+    private final BitSet mLineVisibilities = new BitSet();
+    private int mVisibleLineCount = 0;
+    // Passed to the observers, reused to avoid allocations on each toggle
+    private final BitSet mChangedLines = new BitSet();
+    // Indices of the visible lines in ascending order, the first mVisibleLineCount values are valid
+    private int[] mVisibleLineIndices = new int[0];
+
+    // Index-major values of all lines, if the chart has them (see Chart.Builder#setValueMatrixEnabled)
+    private float[] mValueMatrix;
+
+    // Caching relative X positions of the points, they only change with the timestamp grid
+    private float[] mPointXPositions = new float[0];
+
+    // Caching local minimums and maximums for optimization.
+    // The arrays are reused by next charts, only the first mPoints.size() values are valid
+    private float[] mLocalMin = new float[0];
+    private float[] mLocalMax = new float[0];
+
+    // Min and max of the local values in a range of points
+    private RangeMinMax mRangeMinMax = new RangeMinMax();
+
+    // Each setChart call increments the generation, so a background result for an outdated chart
+    // is thrown away. The background computation checks it too and stops early
+    private volatile int mChartGeneration = 0;
+    private Future<?> mPendingChartTask;
+
+    // Charts are precomputed one at a time, outdated tasks are cancelled before they start
+    private static ExecutorService sPrecomputeExecutor;
+    private static Handler sMainHandler;
+
+    void addObserver(Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    void removeObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /* Nullable */
+    public Chart getChart() {
+        return mChart;
+    }
+
+    public void setChart(Chart chart, boolean animate) {
+        cancelPendingChart();
+
+        final List<Point> points = chart.getPoints();
+        final List<Line> lines = chart.getLines();
+
+        // Grid dependent caches survive if the new chart has the same timestamps
+        boolean sameGrid = CommonHelper.haveSameStamps(mPoints, points);
+        mChart = chart;
+        mPoints = points;
+        mLines = lines;
+        mValueMatrix = chart.getValueMatrix();
+        if (!sameGrid) {
+            calcPointXPositions();
+        }
+
+        // all lines of a new chart are visible
+        mLineVisibilities.clear();
+        mLineVisibilities.set(0, lines.size());
+        mVisibleLineCount = lines.size();
+        updateVisibleLineIndices();
+
+        calcLocalMinAndMAx();
+
+        for (int i = 0; i < mObservers.size(); i++) {
+            mObservers.get(i).onChartChanged(this, animate);
+        }
+    }
+
+    /**
+     * Sets the chart like {@link #setChart} does, but computes everything derived from it
+     * on a background thread, so the main thread isn't blocked by huge charts;
+     * The current chart is shown until the new one is ready, then it's swapped at once;
+     * If another chart is set in the meantime, this one is dropped and the listener isn't notified;
+     * If the computation fails, the listener is notified, without a listener the error is rethrown
+     * on the main thread;
+     * @param listener nullable, notified when the chart is shown or has failed
+     */
+    public void setChartAsync(final Chart chart, final boolean animate,
+                              /* Nullable */ final OnChartReadyListener listener) {
+        cancelPendingChart();
+        final int generation = mChartGeneration;
+        final Handler mainHandler = getMainHandler();
+        final Precomputed.Canceller canceller = new Precomputed.Canceller() {
+            @Override public boolean isCancelled() {
+                return generation != mChartGeneration;
+            }
+        };
+        mPendingChartTask = getPrecomputeExecutor().submit(new Runnable() {
+            @Override public void run() {
+                Precomputed precomputed = null;
+                Throwable error = null;
+                try {
+                    precomputed = Precomputed.compute(chart, canceller);
+                } catch (Throwable e) {
+                    // submit() would swallow it, so it's delivered to the main thread
+                    error = e;
+                }
+                if (precomputed == null && error == null) {
+                    // cancelled
+                    return;
+                }
+                final Precomputed result = precomputed;
+                final Throwable failure = error;
+                mainHandler.post(new Runnable() {
+                    @Override public void run() {
+                        if (generation != mChartGeneration) {
+                            // another chart has been set
+                            return;
+                        }
+                        mPendingChartTask = null;
+                        if (failure != null) {
+                            dispatchChartFailed(chart, failure, listener);
+                            return;
+                        }
+                        applyPrecomputed(result, animate);
+                        if (listener != null) {
+                            listener.onChartReady(chart);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static void dispatchChartFailed(Chart chart, Throwable error,
+                                            /* Nullable */ OnChartReadyListener listener) {
+        if (listener != null) {
+            listener.onChartFailed(chart, error);
+            return;
+        }
+        // nobody handles it, so it's not hidden
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new RuntimeException(error);
+    }
+
+    // Drops the chart being precomputed, if any.
+    // A task, which has already started, sees the new generation and stops at its next check
+    private void cancelPendingChart() {
+        mChartGeneration++;
+        if (mPendingChartTask != null) {
+            mPendingChartTask.cancel(false);
+            mPendingChartTask = null;
+        }
+    }
+
+    private void applyPrecomputed(Precomputed precomputed, boolean animate) {
+        final List<Line> lines = precomputed.lines;
+        mChart = precomputed.chart;
+        mPoints = precomputed.points;
+        mLines = lines;
+        mValueMatrix = precomputed.chart.getValueMatrix();
+        mPointXPositions = precomputed.pointXPositions;
+        mLocalMin = precomputed.localMin;
+        mLocalMax = precomputed.localMax;
+        mRangeMinMax = precomputed.rangeMinMax;
+
+        mLineVisibilities.clear();
+        mLineVisibilities.set(0, lines.size());
+        mVisibleLineCount = lines.size();
+        updateVisibleLineIndices();
+
+        for (int i = 0; i < mObservers.size(); i++) {
+            mObservers.get(i).onChartChanged(this, animate);
+        }
+    }
+
+    private static synchronized ExecutorService getPrecomputeExecutor() {
+        if (sPrecomputeExecutor == null) {
+            sPrecomputeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, PRECOMPUTE_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sPrecomputeExecutor;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+
+    public int getLineCount() {
+        return mLines.size();
+    }
+
+    public Line getLineAt(int index) {
+        return mLines.get(index);
+    }
+
+    public boolean isLineVisible(Line line) {
+        int index = indexOf(line);
+        return index >= 0 && mLineVisibilities.get(index);
+    }
+
+    public boolean isLineVisibleAt(int index) {
+        return mLineVisibilities.get(index);
+    }
+
+    public int getVisibleLineCount() {
+        return mVisibleLineCount;
+    }
+
+    public void show(Line line, boolean animate) {
+        setLineVisibility(line, true, animate);
+    }
+
+    public void hide(Line line, boolean animate) {
+        setLineVisibility(line, false, animate);
+    }
+
+    /**
+     * Returns a copy of the visibility bits, bit i is set if line i is visible;
+     */
+    public BitSet getVisibleLines() {
+        BitSet visibleLines = new BitSet(mLines.size());
+        visibleLines.or(mLineVisibilities);
+        return visibleLines;
+    }
+
+    /**
+     * Makes visible exactly the lines, which bits are set, and hides the others;
+     * All changes are applied at once: the derived data is recomputed once
+     * and the observers are notified once;
+     */
+    public void setVisibleLines(BitSet visibleLines, boolean animate) {
+        final int lineCount = mLines.size();
+        final BitSet changedLines = mChangedLines;
+        changedLines.clear();
+        changedLines.or(mLineVisibilities);
+        changedLines.xor(visibleLines);
+        changedLines.clear(lineCount, Math.max(lineCount, changedLines.length()));
+        if (changedLines.isEmpty()) {
+            return;
+        }
+
+        mLineVisibilities.xor(changedLines);
+        mVisibleLineCount = mLineVisibilities.cardinality();
+        updateVisibleLineIndices();
+        calcLocalMinAndMAx();
+
+        for (int i = 0; i < mObservers.size(); i++) {
+            mObservers.get(i).onLineVisibilitiesChanged(this, changedLines, animate);
+        }
+    }
+
+    public void showAt(int index, boolean animate) {
+        setLineVisibilityAt(index, true, animate);
+    }
+
+    public void hideAt(int index, boolean animate) {
+        setLineVisibilityAt(index, false, animate);
+    }
+
+    // Returns the index of the line in the current chart or -1
+    private int indexOf(Line line) {
+        int index = line.getIndex();
+        if (index >= 0 && index < mLines.size() && mLines.get(index) == line) {
+            return index;
+        }
+        return -1;
+    }
+
+    List<Point> getPoints() {
+        return mPoints;
+    }
+
+    List<Line> getLines() {
+        return mLines;
+    }
+
+    float[] getPointXPositions() {
+        return mPointXPositions;
+    }
+
+    private void setLineVisibility(Line targetLine, boolean isVisible, boolean animate) {
+        final int lineIndex = indexOf(targetLine);
+        if (lineIndex >= 0) {
+            setLineVisibilityAt(lineIndex, isVisible, animate);
+        }
+    }
+
+    private void setLineVisibilityAt(int lineIndex, boolean isVisible, boolean animate) {
+        if (mLineVisibilities.get(lineIndex) == isVisible) {
+            return;
+        }
+
+        final boolean wasNoneVisible = mVisibleLineCount == 0;
+        mLineVisibilities.set(lineIndex, isVisible);
+        mVisibleLineCount += isVisible ? 1 : -1;
+        updateVisibleLineIndices();
+
+        if (isVisible && wasNoneVisible) {
+            // Full recalculation
+            calcLocalMinAndMAx();
+        } else {
+            // optimized way (recalculation just for local timestamps if needed)
+            final Line line = mLines.get(lineIndex);
+            final int pointCount = mPoints.size();
+            // the line is read in chunks with bulk reads
+            final float[] chunk = new float[Math.min(VALUE_CHUNK_SIZE, pointCount)];
+            for (int j = 0; j < pointCount; j++) {
+                if (j % VALUE_CHUNK_SIZE == 0) {
+                    line.getValues(j, 1, chunk, 0, Math.min(VALUE_CHUNK_SIZE, pointCount - j));
+                }
+
+                float value = chunk[j % VALUE_CHUNK_SIZE];
+
+                float currMinValue = mLocalMin[j];
+                float currMaxValue = mLocalMax[j];
+
+                if (isVisible) {
+                    if (value < currMinValue) {
+                        mLocalMin[j] = value;
+                    }
+                    if (value > currMaxValue) {
+                        mLocalMax[j] = value;
+                    }
+                } else if (mValueMatrix != null) {
+                    // min and max are found in one pass over the row
+                    if (value <= currMinValue || value >= currMaxValue) {
+                        findMinMaxInRow(mValueMatrix, mLines.size(), mVisibleLineIndices, mVisibleLineCount,
+                                j, mLocalMin, mLocalMax);
+                    }
+                } else {
+                    if (value <= currMinValue) {
+                        mLocalMin[j] = findMinValueAt(j);
+                    }
+                    if (value >= currMaxValue) {
+                        mLocalMax[j] = findMaxValueAt(j);
+                    }
+                }
+
+                if (mLocalMin[j] != currMinValue || mLocalMax[j] != currMaxValue) {
+                    mRangeMinMax.update(j, mLocalMin[j], mLocalMax[j]);
+                }
+            }
+        }
+
+        mChangedLines.clear();
+        mChangedLines.set(lineIndex);
+        for (int i = 0; i < mObservers.size(); i++) {
+            mObservers.get(i).onLineVisibilitiesChanged(this, mChangedLines, animate);
+        }
+    }
+
+    private void updateVisibleLineIndices() {
+        if (mVisibleLineIndices.length < mLines.size()) {
+            mVisibleLineIndices = new int[mLines.size()];
+        }
+        int count = 0;
+        for (int i = mLineVisibilities.nextSetBit(0); i >= 0; i = mLineVisibilities.nextSetBit(i + 1)) {
+            mVisibleLineIndices[count++] = i;
+        }
+    }
+
+    private float findMinValueAt(int index) {
+        return findMinValueAt(mLines, mLineVisibilities, index);
+    }
+
+    private float findMaxValueAt(int index) {
+        return findMaxValueAt(mLines, mLineVisibilities, index);
+    }
+
+    // finds min value of the visible lines for the given index
+    private static float findMinValueAt(List<Line> lines, BitSet visibilities, int index) {
+        boolean atLeastOneLineVisible = false;
+        float min = Float.MAX_VALUE;
+
+        // invisible lines are skipped
+        for (int i = visibilities.nextSetBit(0); i >= 0; i = visibilities.nextSetBit(i + 1)) {
+            atLeastOneLineVisible = true;
+
+            float value = lines.get(i).getValueAt(index);
+            if (value < min) {
+                min = value;
+            }
+        }
+        if (atLeastOneLineVisible) {
+            return min;
+        } else return 0f; // by default min is 0
+    }
+
+    // finds max value of the visible lines for the given index
+    private static float findMaxValueAt(List<Line> lines, BitSet visibilities, int index) {
+        boolean atLeastOneLineVisible = false;
+        float max = Float.MIN_VALUE;
+
+        // invisible lines are skipped
+        for (int i = visibilities.nextSetBit(0); i >= 0; i = visibilities.nextSetBit(i + 1)) {
+            atLeastOneLineVisible = true;
+
+            float value = lines.get(i).getValueAt(index);
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (atLeastOneLineVisible) {
+            return max;
+        } else return 10f; // by default max is 10
+    }
+
+    private void calcLocalMinAndMAx() {
+        final int pointCount = mPoints.size();
+        if (mLocalMin.length < pointCount) {
+            mLocalMin = new float[pointCount];
+            mLocalMax = new float[pointCount];
+        }
+        // all lines visible is the common case, the rows are scanned directly then
+        final int[] visibleLines = mVisibleLineCount == mLines.size() ? null : mVisibleLineIndices;
+        calcLocalMinAndMax(mLines, mLineVisibilities, mValueMatrix, visibleLines, mVisibleLineCount,
+                mLocalMin, mLocalMax, pointCount, null);
+        mRangeMinMax.build(mLocalMin, mLocalMax, pointCount);
+    }
+
+    // Huge charts are split between worker threads.
+    // If the value matrix is not null, its rows are scanned instead of the lines,
+    // visibleLines are indices of the visible lines then, null means all lines are visible.
+    // If the canceller is cancelled, the arrays are left half computed
+    private static void calcLocalMinAndMax(final List<Line> lines, final BitSet visibilities,
+                                           /* Nullable */ final float[] matrix,
+                                           /* Nullable */ final int[] visibleLines, final int visibleCount,
+                                           final float[] localMin, final float[] localMax, int pointCount,
+                                           /* Nullable */ final Precomputed.Canceller canceller) {
+        ParallelRange.run(pointCount, lines.size(), new ParallelRange.Task() {
+            @Override public void run(int fromIndex, int toIndex) {
+                if (matrix != null) {
+                    final int lineCount = lines.size();
+                    for (int i = fromIndex; i < toIndex; i++) {
+                        if ((i & (VALUE_CHUNK_SIZE - 1)) == 0 && canceller != null && canceller.isCancelled()) {
+                            return;
+                        }
+                        findMinMaxInRow(matrix, lineCount, visibleLines, visibleCount, i, localMin, localMax);
+                    }
+                    return;
+                }
+                findMinMaxInLines(lines, visibilities, fromIndex, toIndex, localMin, localMax, canceller);
+            }
+        });
+    }
+
+    // Finds min and max of the visible values for the indices in [fromIndex, toIndex).
+    // Lines are read in chunks with bulk reads, a chunk of each visible line is folded into
+    // the same slice of localMin and localMax, which stays in cache meanwhile
+    private static void findMinMaxInLines(List<Line> lines, BitSet visibilities, int fromIndex, int toIndex,
+                                          float[] localMin, float[] localMax,
+                                          /* Nullable */ Precomputed.Canceller canceller) {
+        if (visibilities.isEmpty()) {
+            // by default min is 0 and max is 10
+            Arrays.fill(localMin, fromIndex, toIndex, 0f);
+            Arrays.fill(localMax, fromIndex, toIndex, 10f);
+            return;
+        }
+        Arrays.fill(localMin, fromIndex, toIndex, Float.MAX_VALUE);
+        Arrays.fill(localMax, fromIndex, toIndex, Float.MIN_VALUE);
+        final float[] chunk = new float[Math.min(VALUE_CHUNK_SIZE, toIndex - fromIndex)];
+        for (int start = fromIndex; start < toIndex; start += chunk.length) {
+            if (canceller != null && canceller.isCancelled()) {
+                return;
+            }
+            final int count = Math.min(chunk.length, toIndex - start);
+            for (int j = visibilities.nextSetBit(0); j >= 0; j = visibilities.nextSetBit(j + 1)) {
+                lines.get(j).getValues(start, 1, chunk, 0, count);
+                for (int k = 0; k < count; k++) {
+                    float value = chunk[k];
+                    int i = start + k;
+                    if (value < localMin[i]) {
+                        localMin[i] = value;
+                    }
+                    if (value > localMax[i]) {
+                        localMax[i] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    // Finds min and max of the visible values in the matrix row of the index, writes them at the index.
+    // The loops are unrolled by 4 with two independent pairs of accumulators.
+    // visibleLines are indices of the visible lines, null means all lines are visible
+    private static void findMinMaxInRow(float[] matrix, int lineCount,
+                                        /* Nullable */ int[] visibleLines, int visibleCount,
+                                        int index, float[] localMin, float[] localMax) {
+        final int count = visibleLines != null ? visibleCount : lineCount;
+        if (count == 0) {
+            // by default min is 0 and max is 10
+            localMin[index] = 0f;
+            localMax[index] = 10f;
+            return;
+        }
+
+        final int offset = index * lineCount;
+        float min0 = Float.MAX_VALUE;
+        float min1 = Float.MAX_VALUE;
+        float max0 = Float.MIN_VALUE;
+        float max1 = Float.MIN_VALUE;
+        int k = 0;
+        if (visibleLines == null) {
+            // contiguous row
+            for (; k + 3 < count; k += 4) {
+                float v0 = matrix[offset + k];
+                float v1 = matrix[offset + k + 1];
+                float v2 = matrix[offset + k + 2];
+                float v3 = matrix[offset + k + 3];
+                min0 = v0 < min0 ? v0 : min0;
+                max0 = v0 > max0 ? v0 : max0;
+                min1 = v1 < min1 ? v1 : min1;
+                max1 = v1 > max1 ? v1 : max1;
+                min0 = v2 < min0 ? v2 : min0;
+                max0 = v2 > max0 ? v2 : max0;
+                min1 = v3 < min1 ? v3 : min1;
+                max1 = v3 > max1 ? v3 : max1;
+            }
+            for (; k < count; k++) {
+                float v = matrix[offset + k];
+                min0 = v < min0 ? v : min0;
+                max0 = v > max0 ? v : max0;
+            }
+        } else {
+            // the visible values still lie within one row
+            for (; k + 3 < count; k += 4) {
+                float v0 = matrix[offset + visibleLines[k]];
+                float v1 = matrix[offset + visibleLines[k + 1]];
+                float v2 = matrix[offset + visibleLines[k + 2]];
+                float v3 = matrix[offset + visibleLines[k + 3]];
+                min0 = v0 < min0 ? v0 : min0;
+                max0 = v0 > max0 ? v0 : max0;
+                min1 = v1 < min1 ? v1 : min1;
+                max1 = v1 > max1 ? v1 : max1;
+                min0 = v2 < min0 ? v2 : min0;
+                max0 = v2 > max0 ? v2 : max0;
+                min1 = v3 < min1 ? v3 : min1;
+                max1 = v3 > max1 ? v3 : max1;
+            }
+            for (; k < count; k++) {
+                float v = matrix[offset + visibleLines[k]];
+                min0 = v < min0 ? v : min0;
+                max0 = v > max0 ? v : max0;
+            }
+        }
+        localMin[index] = min0 < min1 ? min0 : min1;
+        localMax[index] = max0 > max1 ? max0 : max1;
+    }
+
+    private void calcPointXPositions() {
+        final int pointCount = mPoints.size();
+        if (mPointXPositions.length < pointCount) {
+            mPointXPositions = new float[pointCount];
+        }
+        calcPointXPositions(mPoints, mPointXPositions);
+    }
+
+    private static void calcPointXPositions(List<Point> points, float[] positions) {
+        for (int i = 0; i < points.size(); i++) {
+            positions[i] = CommonHelper.calcPointRelativePositionAt(points, i);
+        }
+    }
+
+    // Local minimums and maximums of the visible lines, only the first getPoints().size() values are valid.
+    // The arrays are changed in place when visibility changes and replaced when the chart changes
+    float[] getLocalMin() {
+        return mLocalMin;
+    }
+
+    float[] getLocalMax() {
+        return mLocalMax;
+    }
+
+    // Finds the index of the first point taken into account for the range starting at the X position.
+    // The point next to the range is taken into account too
+    int findFromIndex(float fromXPosition) {
+        long startStamp = mPoints.get(0).stamp;
+        long stopStamp = mPoints.get(mPoints.size() - 1).stamp;
+        long fromStamp = (long) (startStamp + (stopStamp - startStamp) * fromXPosition) - 1;
+        return Math.max(0, CommonHelper.findFirstPointIndexFrom(mPoints, fromStamp) - 1);
+    }
+
+    // Finds the index of the last point taken into account for the range stopping at the X position
+    int findToIndex(float toXPosition) {
+        long startStamp = mPoints.get(0).stamp;
+        long stopStamp = mPoints.get(mPoints.size() - 1).stamp;
+        long toStamp = (long) (startStamp + (stopStamp - startStamp) * toXPosition) + 1;
+        return Math.min(mPoints.size() - 1, CommonHelper.findFirstPointIndexFrom(mPoints, toStamp + 1));
+    }
+
+    // Finds min and max of the visible lines in [fromIndex, toIndex]
+    void findLocalMinMax(MinMax holder, int fromIndex, int toIndex) {
+        setLocalMinMax(holder, mRangeMinMax.findMin(fromIndex, toIndex), mRangeMinMax.findMax(fromIndex, toIndex));
+    }
+
+    static void setLocalMinMax(MinMax holder, float localMin, float localMax) {
+        float min = Float.MAX_VALUE;
+        float max = Float.MIN_VALUE;
+
+        if (localMin < min) {
+            min = localMin;
+        }
+        if (localMax > max) {
+            max = localMax;
+        }
+        holder.min = min;
+        holder.max = max;
+    }
+
+    // Finds the visible line, which value at the point index is the closest to the target value.
+    // A scan over the visible lines is O(L), it's done once per touch.
+    // Returns null if no line is visible
+    /*nullable*/ Line findClosestVisibleLine(int index, float targetValue) {
+        final int[] visibleLines = mVisibleLineIndices;
+        Line closestLine = null;
+        float closestDistance = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < mVisibleLineCount; i++) {
+            Line line = mLines.get(visibleLines[i]);
+            float distance = Math.abs(line.getValueAt(index) - targetValue);
+            if (closestLine == null || distance < closestDistance) {
+                closestLine = line;
+                closestDistance = distance;
+            }
+        }
+        return closestLine;
+    }
+
+    // Everything derived from a chart with all lines visible.
+    // It's computed into new arrays, so it can be done on any thread
+    private static final class Precomputed {
+
+        interface Canceller {
+            // May be called from any thread
+            boolean isCancelled();
+        }
+
+        Chart chart;
+        List<Point> points;
+        List<Line> lines;
+        float[] pointXPositions;
+        float[] localMin;
+        float[] localMax;
+        RangeMinMax rangeMinMax;
+
+        // Returns null if cancelled
+        /* Nullable */
+        static Precomputed compute(Chart chart, Canceller canceller) {
+            final List<Point> points = chart.getPoints();
+            final List<Line> lines = chart.getLines();
+            final int pointCount = points.size();
+            final BitSet visibilities = new BitSet(lines.size());
+            visibilities.set(0, lines.size());
+
+            Precomputed precomputed = new Precomputed();
+            precomputed.chart = chart;
+            precomputed.points = points;
+            precomputed.lines = lines;
+
+            precomputed.pointXPositions = new float[pointCount];
+            calcPointXPositions(points, precomputed.pointXPositions);
+            if (canceller.isCancelled()) {
+                return null;
+            }
+
+            final float[] localMin = new float[pointCount];
+            final float[] localMax = new float[pointCount];
+            calcLocalMinAndMax(lines, visibilities, chart.getValueMatrix(), null, lines.size(),
+                    localMin, localMax, pointCount, canceller);
+            if (canceller.isCancelled()) {
+                return null;
+            }
+            precomputed.localMin = localMin;
+            precomputed.localMax = localMax;
+            precomputed.rangeMinMax = new RangeMinMax();
+            precomputed.rangeMinMax.build(localMin, localMax, pointCount);
+
+            // range statistics are indexed here, so the first query doesn't pay for it
+            for (int i = 0; i < lines.size(); i++) {
+                if (canceller.isCancelled()) {
+                    return null;
+                }
+                lines.get(i).getStats();
+            }
+            return precomputed;
+        }
+    }
+}
@@ -6,10 +6,15 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.widget.OverScroller;
 
 import com.froloapp.chart.R;
 
@@ -18,7 +23,12 @@ public class ChartSlider extends AbsChartView {
     // static
     private static final int DEFAULT_FRAME_HORIZONTAL_BORDER_WIDTH_IN_DP = 5;
     private static final int DEFAULT_FRAME_VERTICAl_BORDER_WIDTH_IN_DP = 1;
-    private static final float DEFAULT_MAX_FRAME_COMPRESSION = 0.2f;
+    private static final float DEFAULT_MAX_FRAME_COMPRESSION = Config.MIN_X_RANGE;
+
+    // Listeners get the frame positions during a fling at most this often
+    private static final long MIN_FLING_DISPATCH_INTERVAL_MILLIS = 16L;
+    // Frame delay for devices without postOnAnimation
+    private static final long FALLBACK_FRAME_DELAY_MILLIS = 16L;
 
     /**
      * The Slider is not currently scrolling.
@@ -58,8 +68,28 @@ public class ChartSlider extends AbsChartView {
 
     private float mMaxFrameCompression = 0.5f;
 
+    // FLING
+    private VelocityTracker mVelocityTracker;
+    private OverScroller mScroller;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+    // The frame keeps its width during a fling
+    private float mFlingFrameWidth;
+    // Sub-pixel part of the frame position, the scroller works in whole pixels
+    private float mFlingStartOffset;
+    private int mLastDispatchedFlingX;
+    private long mLastFlingDispatchTime;
+
+    // Single callback that moves the frame on each animation frame
+    private final Runnable mFlingFrame = new Runnable() {
+        @Override public void run() {
+            onFlingFrame();
+        }
+    };
+
     // SCROLL LISTENER
     private OnScrollListener mListener;
+    private OnScrollStateChangedListener mScrollStateListener;
 
     public ChartSlider(Context context) {
         this(context, null);
@@ -112,6 +142,11 @@ public class ChartSlider extends AbsChartView {
 
         mTouchBorderThreshold = Misc.dpToPx(5f, context);
 
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mScroller = new OverScroller(context);
+
         setWillDrawXAxis(false);
         setWillDrawYAxis(false);
     }
@@ -124,11 +159,38 @@ public class ChartSlider extends AbsChartView {
         this.mListener = listener;
     }
 
-    private void dispatchScrolled(float startXPosition, float stopXPosition) {
+    /**
+     * Listens to changes of the scroll state;
+     * When a fling settles, the state changes from {@link #SCROLL_STATE_SETTLING} to {@link #SCROLL_STATE_IDLE};
+     */
+    public interface OnScrollStateChangedListener {
+        void onScrollStateChanged(ChartSlider slider, int state);
+    }
+
+    public void setOnScrollStateChangedListener(OnScrollStateChangedListener listener) {
+        this.mScrollStateListener = listener;
+    }
+
+    public int getScrollState() {
+        return scrollState;
+    }
+
+    private void dispatchScrolled(float startXPosition, float stopXPosition, boolean fromUser) {
         OnScrollListener l = mListener;
         if (l != null) {
             l.onScroll(this, startXPosition, stopXPosition);
         }
+        dispatchXPositionsChanged(startXPosition, stopXPosition, fromUser);
+    }
+
+    private void setScrollState(int state) {
+        if (scrollState != state) {
+            scrollState = state;
+            OnScrollStateChangedListener l = mScrollStateListener;
+            if (l != null) {
+                l.onScrollStateChanged(this, state);
+            }
+        }
     }
 
     private float checkPercentage(float value) {
@@ -213,24 +275,39 @@ public class ChartSlider extends AbsChartView {
         int action = event.getAction();
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
+                // A touch catches the frame
+                stopFling();
+                cancelXPositionsAnimation();
                  // Detect if user starts dragging frame or one of frame borders
                 float x = event.getX();
                 mDragX = x;
                 if (isFrameLeftBorderTouched(x)) {
-                    scrollState = SCROLL_STATE_LEFT_BORDER_DRAGGING;
+                    setScrollState(SCROLL_STATE_LEFT_BORDER_DRAGGING);
                     getParent().requestDisallowInterceptTouchEvent(true);
+                    notifyInteraction();
                     return true;
                 } else if (isFrameRightBorderTouched(x)) {
-                    scrollState = SCROLL_STATE_RIGHT_BORDER_DRAGGING;
+                    setScrollState(SCROLL_STATE_RIGHT_BORDER_DRAGGING);
                     getParent().requestDisallowInterceptTouchEvent(true);
+                    notifyInteraction();
                     return true;
                 } else if (isFrameTouched(x)) {
-                    scrollState = SCROLL_STATE_FRAME_DRAGGING;
+                    setScrollState(SCROLL_STATE_FRAME_DRAGGING);
                     getParent().requestDisallowInterceptTouchEvent(true);
+                    notifyInteraction();
+                    if (mVelocityTracker == null) {
+                        mVelocityTracker = VelocityTracker.obtain();
+                    } else {
+                        mVelocityTracker.clear();
+                    }
+                    mVelocityTracker.addMovement(event);
                     return true;
                 } else return super.onTouchEvent(event);
             }
             case MotionEvent.ACTION_MOVE: {
+                if (scrollState != SCROLL_STATE_IDLE) {
+                    notifyInteraction();
+                }
                 if (scrollState == SCROLL_STATE_LEFT_BORDER_DRAGGING) {
                     float x = event.getX();
                     float frameScrollRel = (x - mDragX) / getViewContentWith();
@@ -238,7 +315,7 @@ public class ChartSlider extends AbsChartView {
                     float newStartXPosition = checkPercentage(mLeftBorderXPosition + frameScrollRel);
                     if (canCompressFrame(newStartXPosition, mRightBorderXPosition)) {
                         mLeftBorderXPosition = newStartXPosition;
-                        dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition);
+                        dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition, true);
                         invalidate();
                     }
                     return true;
@@ -249,11 +326,14 @@ public class ChartSlider extends AbsChartView {
                     float newStopXPosition = checkPercentage(mRightBorderXPosition + frameScrollRel);
                     if (canCompressFrame(mLeftBorderXPosition, newStopXPosition)) {
                         mRightBorderXPosition = newStopXPosition;
-                        dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition);
+                        dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition, true);
                         invalidate();
                     }
                     return true;
                 } else if (scrollState == SCROLL_STATE_FRAME_DRAGGING) {
+                    if (mVelocityTracker != null) {
+                        mVelocityTracker.addMovement(event);
+                    }
                     float x = event.getX();
                     float frameScrollRel = (x - mDragX) / getViewContentWith();
                     if (frameScrollRel > 0) {
@@ -264,7 +344,7 @@ public class ChartSlider extends AbsChartView {
                     mLeftBorderXPosition = checkPercentage(mLeftBorderXPosition + frameScrollRel);
                     mRightBorderXPosition = checkPercentage(mRightBorderXPosition + frameScrollRel);
                     mDragX = x;
-                    dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition);
+                    dispatchScrolled(mLeftBorderXPosition, mRightBorderXPosition, true);
                     invalidate();
                     return true;
                 }
@@ -272,7 +352,23 @@ public class ChartSlider extends AbsChartView {
             }
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_UP: {
-                scrollState = SCROLL_STATE_IDLE;
+                float velocity = 0f;
+                if (action == MotionEvent.ACTION_UP
+                        && scrollState == SCROLL_STATE_FRAME_DRAGGING
+                        && mVelocityTracker != null) {
+                    mVelocityTracker.addMovement(event);
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    velocity = mVelocityTracker.getXVelocity();
+                }
+                if (mVelocityTracker != null) {
+                    mVelocityTracker.recycle();
+                    mVelocityTracker = null;
+                }
+                if (Math.abs(velocity) >= mMinFlingVelocity && velocity != 0f) {
+                    startFling(velocity);
+                } else {
+                    setScrollState(SCROLL_STATE_IDLE);
+                }
                 getParent().requestDisallowInterceptTouchEvent(false);
                 return true;
             }
@@ -280,11 +376,124 @@ public class ChartSlider extends AbsChartView {
         return super.onTouchEvent(event);
     }
 
+    private void startFling(float velocity) {
+        final int contentWidth = getViewContentWith();
+        if (contentWidth <= 0) {
+            setScrollState(SCROLL_STATE_IDLE);
+            return;
+        }
+        mFlingFrameWidth = mRightBorderXPosition - mLeftBorderXPosition;
+        final float startX = mLeftBorderXPosition * contentWidth;
+        final int startPixel = (int) startX;
+        final int maxPixel = (int) ((1f - mFlingFrameWidth) * contentWidth);
+        mFlingStartOffset = startX - startPixel;
+        mScroller.fling(startPixel, 0, (int) velocity, 0, 0, maxPixel, 0, 0);
+        mLastDispatchedFlingX = startPixel;
+        mLastFlingDispatchTime = SystemClock.uptimeMillis();
+        setScrollState(SCROLL_STATE_SETTLING);
+        postFlingFrame();
+    }
+
+    private void stopFling() {
+        if (scrollState == SCROLL_STATE_SETTLING) {
+            mScroller.forceFinished(true);
+            removeCallbacks(mFlingFrame);
+            setScrollState(SCROLL_STATE_IDLE);
+        }
+    }
+
+    private void postFlingFrame() {
+        if (Build.VERSION.SDK_INT >= 16) {
+            postOnAnimation(mFlingFrame);
+        } else {
+            postDelayed(mFlingFrame, FALLBACK_FRAME_DELAY_MILLIS);
+        }
+    }
+
+    private void onFlingFrame() {
+        if (scrollState != SCROLL_STATE_SETTLING) {
+            return;
+        }
+        final boolean isRunning = mScroller.computeScrollOffset();
+        final int contentWidth = getViewContentWith();
+        if (contentWidth <= 0) {
+            stopFling();
+            return;
+        }
+
+        final int currX = mScroller.getCurrX();
+        float start = checkPercentage((currX + mFlingStartOffset) / contentWidth);
+        float stop = start + mFlingFrameWidth;
+        if (stop > 1f) {
+            stop = 1f;
+            start = 1f - mFlingFrameWidth;
+        }
+        mLeftBorderXPosition = start;
+        mRightBorderXPosition = stop;
+        notifyInteraction();
+        invalidate();
+
+        // Listeners may redraw a whole chart, so they are not notified more often than needed
+        final long now = SystemClock.uptimeMillis();
+        if (currX != mLastDispatchedFlingX
+                && (!isRunning || now - mLastFlingDispatchTime >= MIN_FLING_DISPATCH_INTERVAL_MILLIS)) {
+            mLastDispatchedFlingX = currX;
+            mLastFlingDispatchTime = now;
+            dispatchScrolled(start, stop, true);
+        }
+
+        if (isRunning) {
+            postFlingFrame();
+        } else {
+            setScrollState(SCROLL_STATE_IDLE);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopFling();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public float getStartXPosition() {
+        return mLeftBorderXPosition;
+    }
+
+    @Override
+    public float getStopXPosition() {
+        return mRightBorderXPosition;
+    }
+
+    // The slider always shows the whole chart, so only the frame is moved
     @Override
     public void setXPositions(float start, float stop, boolean animate) {
+        stopFling();
+        cancelXPositionsAnimation();
         this.mLeftBorderXPosition = start;
         this.mRightBorderXPosition = stop;
-        super.setXPositions(0f, 1f, animate);
+        getChartDelegate().setXPositions(0f, 1f, animate);
+        dispatchXPositionsChanged(start, stop, false);
+    }
+
+    @Override
+    void applyXPositionsFrame(float startXPosition, float stopXPosition) {
+        mLeftBorderXPosition = startXPosition;
+        mRightBorderXPosition = stopXPosition;
+        notifyInteraction();
+        invalidate();
+        dispatchScrolled(startXPosition, stopXPosition, false);
+    }
+
+    @Override
+    void onXPositionsAnimationStarted() {
+        stopFling();
+        setScrollState(SCROLL_STATE_SETTLING);
+    }
+
+    @Override
+    void onXPositionsAnimationEnded() {
+        setScrollState(SCROLL_STATE_IDLE);
     }
 
     static class SavedState extends AbsChartView.SavedState {
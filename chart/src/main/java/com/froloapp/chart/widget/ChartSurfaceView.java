@@ -0,0 +1,466 @@
+package com.froloapp.chart.widget;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.froloapp.chart.R;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Chart view that draws on its own render thread;
+ * Uses the same {@link ChartDelegate} as {@link ChartView} does;
+ * The delegate and its private model are touched by the render thread only, the UI thread hands viewport
+ * and touch changes over through atomics and posts everything else, so it never waits for a frame to finish;
+ */
+public class ChartSurfaceView extends SurfaceView {
+
+    private static final String RENDER_THREAD_NAME = "ChartRenderThread";
+
+    // Marks that there is nothing to hand over (X positions are never NaN)
+    private static final long NO_PENDING_X_POSITIONS = 0x7fc000007fc00000L;
+    private static final int NO_PENDING_SELECTION = 0x7fc00000;
+
+    public interface OnStampClickListener {
+        void onTouchDown(ChartSurfaceView view, int stampIndex, float stampXCoordinate);
+        void onTouchUp(ChartSurfaceView view);
+    }
+
+    // Host values are read on the render thread only
+    private final ChartHost mHost = new ChartHost() {
+        @Override public Context getContext() {
+            return ChartSurfaceView.this.getContext();
+        }
+        @Override public int getMeasuredWidth() {
+            return mSurfaceWidth;
+        }
+        @Override public int getMeasuredHeight() {
+            return mSurfaceHeight;
+        }
+        @Override public int getPaddingLeft() {
+            return mPaddingLeft;
+        }
+        @Override public int getPaddingTop() {
+            return mPaddingTop;
+        }
+        @Override public int getPaddingRight() {
+            return mPaddingRight;
+        }
+        @Override public int getPaddingBottom() {
+            return mPaddingBottom;
+        }
+        @Override public int getFooterHeight() {
+            return mFooterHeight;
+        }
+        @Override public void setFooterHeight(int height) {
+            mFooterHeight = height;
+            scheduleFrame();
+        }
+        @Override public void invalidate() {
+            scheduleFrame();
+        }
+        @Override public void invalidate(int left, int top, int right, int bottom) {
+            // the surface is always redrawn entirely
+            scheduleFrame();
+        }
+        @Override public void requestLayout() {
+            scheduleFrame();
+        }
+    };
+
+    // The model of the delegate is private to this view, it is changed on the render thread only
+    // (or on the UI thread before the render thread is started)
+    private final ChartDelegate mChartDelegate = new ChartDelegate(mHost);
+
+    // Render thread state
+    private HandlerThread mRenderThread;
+    private volatile Handler mRenderHandler;
+    private SurfaceHolder mSurfaceHolder;
+    private int mSurfaceWidth;
+    private int mSurfaceHeight;
+    private int mFooterHeight;
+    // Padding as of the last layout, handed over from the UI thread
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+
+    private int mBackgroundColor;
+
+    // Lock-free handoff from the UI thread to the render thread
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean(false);
+    private final AtomicLong mPendingXPositions = new AtomicLong(NO_PENDING_X_POSITIONS);
+    private volatile boolean mPendingXPositionsAnimate;
+    private final AtomicInteger mPendingSelectedXPosition = new AtomicInteger(NO_PENDING_SELECTION);
+
+    // UI thread copy of the padding handed over to the render thread
+    private final Rect mHandedPadding = new Rect(-1, -1, -1, -1);
+
+    // UI thread copy of the latest requested X positions, used for touch handling
+    private float mStartXPosition = 0f;
+    private float mStopXPosition = 1f;
+
+    private Chart mChart;
+
+    private OnStampClickListener mOnStampClickListener;
+
+    // Index of the touched point, UI thread only. A new frame is requested only when it changes
+    private int mSelectedIndex = -1;
+
+    private final Runnable mDrawFrame = new Runnable() {
+        @Override public void run() {
+            mFrameScheduled.set(false);
+            drawFrame();
+        }
+    };
+
+    private final SurfaceHolder.Callback mSurfaceCallback = new SurfaceHolder.Callback() {
+        @Override public void surfaceCreated(final SurfaceHolder holder) {
+            runOnRenderThread(new Runnable() {
+                @Override public void run() {
+                    mSurfaceHolder = holder;
+                }
+            });
+        }
+
+        @Override public void surfaceChanged(final SurfaceHolder holder, int format, final int width, final int height) {
+            runOnRenderThread(new Runnable() {
+                @Override public void run() {
+                    mSurfaceHolder = holder;
+                    mSurfaceWidth = width;
+                    mSurfaceHeight = height;
+                    mChartDelegate.measured();
+                    drawFrame();
+                }
+            });
+        }
+
+        @Override public void surfaceDestroyed(SurfaceHolder holder) {
+            // The surface must not be touched once this method returns, so wait for the render thread
+            final CountDownLatch latch = new CountDownLatch(1);
+            boolean posted = runOnRenderThread(new Runnable() {
+                @Override public void run() {
+                    mSurfaceHolder = null;
+                    latch.countDown();
+                }
+            });
+            if (posted) {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    };
+
+    public ChartSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public ChartSurfaceView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ChartSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs);
+    }
+
+    private void init(Context context, AttributeSet attrs) {
+        if (attrs != null) {
+            TypedArray typedArray = context.getTheme()
+                    .obtainStyledAttributes(attrs, R.styleable.ChartSurfaceView, 0, 0);
+            mBackgroundColor = typedArray.getColor(R.styleable.ChartSurfaceView_chartBackgroundColor,
+                    Color.WHITE);
+            typedArray.recycle();
+        } else {
+            mBackgroundColor = Color.WHITE;
+        }
+
+        mChartDelegate.loadAttributes(context, attrs);
+        mChartDelegate.setXPositions(0.0f, 0.3f, false);
+        mChartDelegate.setWillDrawXAxis(true);
+        mChartDelegate.setWillDrawYAxis(true);
+        mStartXPosition = 0.0f;
+        mStopXPosition = 0.3f;
+
+        getHolder().addCallback(mSurfaceCallback);
+    }
+
+    // Runs the action on the render thread or right here if the thread is not started yet.
+    // Returns true if the action was posted to the render thread.
+    private boolean runOnRenderThread(Runnable action) {
+        Handler handler = mRenderHandler;
+        if (handler != null) {
+            handler.post(action);
+            return true;
+        } else {
+            action.run();
+            return false;
+        }
+    }
+
+    private void scheduleFrame() {
+        Handler handler = mRenderHandler;
+        if (handler != null && mFrameScheduled.compareAndSet(false, true)) {
+            handler.post(mDrawFrame);
+        }
+    }
+
+    private static long packXPositions(float start, float stop) {
+        return ((long) Float.floatToIntBits(start) << 32) | (Float.floatToIntBits(stop) & 0xffffffffL);
+    }
+
+    // Applies everything the UI thread handed over since the previous frame
+    private void consumePendingChanges() {
+        long xPositions = mPendingXPositions.getAndSet(NO_PENDING_X_POSITIONS);
+        if (xPositions != NO_PENDING_X_POSITIONS) {
+            float start = Float.intBitsToFloat((int) (xPositions >>> 32));
+            float stop = Float.intBitsToFloat((int) xPositions);
+            mChartDelegate.setXPositions(start, stop, mPendingXPositionsAnimate);
+        }
+
+        int selection = mPendingSelectedXPosition.getAndSet(NO_PENDING_SELECTION);
+        if (selection != NO_PENDING_SELECTION) {
+            float selectedXPosition = Float.intBitsToFloat(selection);
+            if (selectedXPosition >= 0f) {
+                mChartDelegate.setSelectedXPosition(selectedXPosition);
+            } else {
+                mChartDelegate.clearSelectedXPosition();
+            }
+        }
+    }
+
+    // Called on the render thread only
+    private void drawFrame() {
+        consumePendingChanges();
+
+        SurfaceHolder holder = mSurfaceHolder;
+        if (holder == null || mSurfaceWidth == 0 || mSurfaceHeight == 0) {
+            return;
+        }
+
+        Surface surface = holder.getSurface();
+        if (surface == null || !surface.isValid()) {
+            return;
+        }
+
+        final Canvas canvas;
+        try {
+            if (Build.VERSION.SDK_INT >= 26) {
+                canvas = surface.lockHardwareCanvas();
+            } else {
+                canvas = holder.lockCanvas();
+            }
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            // the surface has gone, the next surfaceChanged will bring a new one
+            return;
+        }
+
+        if (canvas == null) {
+            return;
+        }
+
+        try {
+            canvas.drawColor(mBackgroundColor);
+            mChartDelegate.draw(canvas);
+        } finally {
+            if (Build.VERSION.SDK_INT >= 26) {
+                surface.unlockCanvasAndPost(canvas);
+            } else {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        // padding changes request a layout, so it's handed over here
+        final int paddingLeft = getPaddingLeft();
+        final int paddingTop = getPaddingTop();
+        final int paddingRight = getPaddingRight();
+        final int paddingBottom = getPaddingBottom();
+        final Rect handed = mHandedPadding;
+        if (handed.left == paddingLeft && handed.top == paddingTop
+                && handed.right == paddingRight && handed.bottom == paddingBottom) {
+            return;
+        }
+        handed.set(paddingLeft, paddingTop, paddingRight, paddingBottom);
+        runOnRenderThread(new Runnable() {
+            @Override public void run() {
+                mPaddingLeft = paddingLeft;
+                mPaddingTop = paddingTop;
+                mPaddingRight = paddingRight;
+                mPaddingBottom = paddingBottom;
+                mChartDelegate.measured();
+                scheduleFrame();
+            }
+        });
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        HandlerThread thread = new HandlerThread(RENDER_THREAD_NAME, Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        mRenderThread = thread;
+        mRenderHandler = new Handler(thread.getLooper());
+        runOnRenderThread(new Runnable() {
+            @Override public void run() {
+                mChartDelegate.attach();
+            }
+        });
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        final HandlerThread thread = mRenderThread;
+        Handler handler = mRenderHandler;
+        mRenderThread = null;
+        mRenderHandler = null;
+        if (thread != null && handler != null) {
+            handler.post(new Runnable() {
+                @Override public void run() {
+                    mChartDelegate.detach();
+                    thread.quit();
+                }
+            });
+        }
+    }
+
+    /* Nullable */
+    public Chart getChart() {
+        return mChart;
+    }
+
+    public void setChart(final Chart chart, final boolean animate) {
+        mChart = chart;
+        mSelectedIndex = -1;
+        runOnRenderThread(new Runnable() {
+            @Override public void run() {
+                mChartDelegate.getModel().setChart(chart, animate);
+            }
+        });
+    }
+
+    public void setXPositions(float startXPosition, float stopXPosition, boolean animate) {
+        mStartXPosition = startXPosition;
+        mStopXPosition = stopXPosition;
+        if (mRenderHandler != null) {
+            mPendingXPositionsAnimate = animate;
+            mPendingXPositions.set(packXPositions(startXPosition, stopXPosition));
+            scheduleFrame();
+        } else {
+            mChartDelegate.setXPositions(startXPosition, stopXPosition, animate);
+        }
+    }
+
+    public void show(final Line line, final boolean animate) {
+        runOnRenderThread(new Runnable() {
+            @Override public void run() {
+                mChartDelegate.getModel().show(line, animate);
+            }
+        });
+    }
+
+    public void hide(final Line line, final boolean animate) {
+        runOnRenderThread(new Runnable() {
+            @Override public void run() {
+                mChartDelegate.getModel().hide(line, animate);
+            }
+        });
+    }
+
+    private void setSelectedXPosition(float xPosition) {
+        if (mRenderHandler != null) {
+            mPendingSelectedXPosition.set(Float.floatToIntBits(xPosition));
+            scheduleFrame();
+        }
+    }
+
+    public void setOnStampClickListener(OnStampClickListener l) {
+        this.mOnStampClickListener = l;
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getAction();
+        switch (action) {
+            case MotionEvent.ACTION_DOWN: {
+                getParent().requestDisallowInterceptTouchEvent(true);
+                handleTouch(event.getX());
+                return true;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                handleTouch(event.getX());
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                mSelectedIndex = -1;
+                setSelectedXPosition(-1f);
+                getParent().requestDisallowInterceptTouchEvent(false);
+                dispatchTouchUp();
+                break;
+            }
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private void handleTouch(float x) {
+        Chart chart = mChart;
+        if (chart == null) {
+            return;
+        }
+
+        int contentWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
+        float xRelative = (x - getPaddingLeft()) / contentWidth;
+        float xPosition = xRelative * (mStopXPosition - mStartXPosition) + mStartXPosition;
+        if (xPosition < 0f || xPosition > 1f) {
+            return;
+        }
+
+        int stampIndex = CommonHelper.getClosestPointIndex(
+                chart.getPoints(),
+                xPosition);
+        if (stampIndex != mSelectedIndex) {
+            mSelectedIndex = stampIndex;
+            setSelectedXPosition(xPosition);
+        }
+
+        dispatchTouchDown(stampIndex, x);
+    }
+
+    private void dispatchTouchDown(int stampIndex, float stampXCoordinate) {
+        if (mOnStampClickListener != null) {
+            mOnStampClickListener.onTouchDown(this, stampIndex, stampXCoordinate);
+        }
+    }
+
+    private void dispatchTouchUp() {
+        if (mOnStampClickListener != null) {
+            mOnStampClickListener.onTouchUp(this);
+        }
+    }
+}
@@ -2,14 +2,20 @@ package com.froloapp.chart.widget;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 
 
 public class ChartView extends AbsChartView {
 
     private static final String LOG_TAG = "ChartView";
 
+    private static final float DEFAULT_MIN_ZOOM_RANGE = Config.MIN_X_RANGE;
+    // Frame delay for devices without postOnAnimation
+    private static final long FALLBACK_FRAME_DELAY_MILLIS = 16L;
+
     public interface OnStampClickListener {
         void onTouchDown(ChartView view, int stampIndex, float stampXCoordinate);
         void onTouchUp(ChartView view);
@@ -17,6 +23,33 @@ public class ChartView extends AbsChartView {
 
     private OnStampClickListener mOnStampClickListener;
 
+    // Pinch zoom and two-finger pan
+    private ScaleGestureDetector mScaleDetector;
+    private boolean mIsZoomEnabled = true;
+    private float mMinZoomRange = DEFAULT_MIN_ZOOM_RANGE;
+    // True from the moment a second finger touches the view till all fingers are up
+    private boolean mIsMultiTouch = false;
+    private float mLastFocusX;
+
+    // Window changes made by a gesture are coalesced and applied once per frame
+    private boolean mIsXPositionsUpdatePending = false;
+    private float mPendingStartXPosition;
+    private float mPendingStopXPosition;
+
+    private final Runnable mApplyPendingXPositions = new Runnable() {
+        @Override public void run() {
+            applyPendingXPositions();
+        }
+    };
+
+    private final ScaleGestureDetector.OnScaleGestureListener mScaleListener =
+            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override public boolean onScale(ScaleGestureDetector detector) {
+            zoom(detector.getScaleFactor(), detector.getFocusX());
+            return true;
+        }
+    };
+
     public ChartView(Context context) {
         this(context, null);
     }
@@ -33,55 +66,209 @@ public class ChartView extends AbsChartView {
     private void init(Context context, AttributeSet attrs) {
         setWillDrawXAxis(true);
         setWillDrawYAxis(true);
+        mScaleDetector = new ScaleGestureDetector(context, mScaleListener);
     }
 
     public void setOnStampClickListener(OnStampClickListener l) {
         this.mOnStampClickListener = l;
     }
 
+    /**
+     * Finds the visible line that passes closest to the given point of this view;
+     * The values of the visible lines at the closest timestamp are compared, so a search takes O(L);
+     * @return the closest line or null if there is no visible line at the X coordinate
+     */
+    public /*nullable*/ Line findLineAt(float x, float y) {
+        return getChartDelegate().findClosestLine(x, y);
+    }
+
+    public boolean isZoomEnabled() {
+        return mIsZoomEnabled;
+    }
+
+    /**
+     * Enables pinch zoom and two-finger pan of the chart window. Enabled by default;
+     * Window changes made by gestures are reported to {@link OnXPositionsChangedListener} with fromUser set to true;
+     */
+    public void setZoomEnabled(boolean enabled) {
+        mIsZoomEnabled = enabled;
+    }
+
+    /**
+     * Sets the narrowest window pinch zoom may reach, as a part of the whole chart.
+     * A linked ChartSlider must allow the same frame, see its maxFrameCompression attribute.
+     */
+    public void setMinZoomRange(float range) {
+        mMinZoomRange = range;
+    }
+
+    public boolean isTooltipEnabled() {
+        return getChartDelegate().isTooltipEnabled();
+    }
+
+    /**
+     * If enabled, values of the touched point are shown in a tooltip drawn over the chart;
+     * Colors of the tooltip are set with tooltipBackgroundColor, tooltipBorderColor and tooltipTextColor attributes;
+     */
+    public void setTooltipEnabled(boolean enabled) {
+        getChartDelegate().setTooltipEnabled(enabled);
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        int action = event.getAction();
-        //wasClickedStamp = false;
+        if (mIsZoomEnabled) {
+            mScaleDetector.onTouchEvent(event);
+        }
+        int action = event.getActionMasked();
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
+                mIsMultiTouch = false;
                 getParent().requestDisallowInterceptTouchEvent(true);
+                notifyInteraction();
                 float x = event.getX();
                 handleTouch(x);
                 return true;
             }
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                if (mIsZoomEnabled) {
+                    if (!mIsMultiTouch) {
+                        // Scrubbing stops, the fingers move the window now
+                        mIsMultiTouch = true;
+                        getChartDelegate().clearSelectedXPosition();
+                        dispatchTouchUp();
+                    }
+                    mLastFocusX = calcFocusX(event, -1);
+                    notifyInteraction();
+                }
+                return true;
+            }
             case MotionEvent.ACTION_MOVE: {
-                float x = event.getX();
-                handleTouch(x);
+                notifyInteraction();
+                if (mIsMultiTouch) {
+                    float focusX = calcFocusX(event, -1);
+                    pan(focusX - mLastFocusX);
+                    mLastFocusX = focusX;
+                } else {
+                    float x = event.getX();
+                    handleTouch(x);
+                }
                 break;
             }
+            case MotionEvent.ACTION_POINTER_UP: {
+                if (mIsMultiTouch) {
+                    // The focus jumps when a finger is lifted, so it's taken without that finger
+                    mLastFocusX = calcFocusX(event, event.getActionIndex());
+                }
+                return true;
+            }
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL: {
-                getChartDelegate().clearSelectedXPosition();
+                if (!mIsMultiTouch) {
+                    getChartDelegate().clearSelectedXPosition();
+                    dispatchTouchUp();
+                }
+                mIsMultiTouch = false;
                 getParent().requestDisallowInterceptTouchEvent(false);
-                dispatchTouchUp();
                 break;
             }
         }
         return super.onTouchEvent(event);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mApplyPendingXPositions);
+        mIsXPositionsUpdatePending = false;
+        super.onDetachedFromWindow();
+    }
+
+    // Average X of the pointers, except the one at skipIndex
+    private static float calcFocusX(MotionEvent event, int skipIndex) {
+        float sum = 0f;
+        int count = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipIndex) {
+                sum += event.getX(i);
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0f;
+    }
+
+    // Scales the window around the focus, so the point under the fingers stays in place
+    private void zoom(float scaleFactor, float focusX) {
+        final int contentWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
+        if (scaleFactor <= 0f || contentWidth <= 0) {
+            return;
+        }
+        ensurePendingXPositions();
+        final float range = mPendingStopXPosition - mPendingStartXPosition;
+        final float focusRel = (focusX - getPaddingLeft()) / contentWidth;
+        final float focusXPosition = mPendingStartXPosition + focusRel * range;
+        float newRange = range / scaleFactor;
+        newRange = Math.max(Math.min(mMinZoomRange, 1f), Math.min(1f, newRange));
+        setPendingXPositions(focusXPosition - focusRel * newRange, newRange);
+    }
+
+    private void pan(float dx) {
+        final int contentWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
+        if (dx == 0f || contentWidth <= 0) {
+            return;
+        }
+        ensurePendingXPositions();
+        final float range = mPendingStopXPosition - mPendingStartXPosition;
+        setPendingXPositions(mPendingStartXPosition - dx / contentWidth * range, range);
+    }
+
+    private void ensurePendingXPositions() {
+        if (!mIsXPositionsUpdatePending) {
+            mPendingStartXPosition = getStartXPosition();
+            mPendingStopXPosition = getStopXPosition();
+        }
+    }
+
+    private void setPendingXPositions(float start, float range) {
+        if (start < 0f) {
+            start = 0f;
+        }
+        if (start + range > 1f) {
+            start = 1f - range;
+        }
+        mPendingStartXPosition = start;
+        mPendingStopXPosition = start + range;
+        if (!mIsXPositionsUpdatePending) {
+            mIsXPositionsUpdatePending = true;
+            if (Build.VERSION.SDK_INT >= 16) {
+                postOnAnimation(mApplyPendingXPositions);
+            } else {
+                postDelayed(mApplyPendingXPositions, FALLBACK_FRAME_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void applyPendingXPositions() {
+        mIsXPositionsUpdatePending = false;
+        cancelXPositionsAnimation();
+        getChartDelegate().setXPositions(mPendingStartXPosition, mPendingStopXPosition, true);
+        dispatchXPositionsChanged(mPendingStartXPosition, mPendingStopXPosition, true);
+    }
+
     private void handleTouch(float x) {
         ChartDelegate helper = getChartDelegate();
         float xPosition = CommonHelper.calcCoordinateRelativePosition(
-                this,
+                getChartHost(),
                 helper.getStartXPosition(),
                 helper.getStopXPosition(),
                 x);
 
         helper.setSelectedXPosition(xPosition);
 
-        int stampIndex = CommonHelper.getClosestPointIndex(
-                helper.getPoints(),
-                xPosition);
-
-        dispatchTouchDown(stampIndex, x);
+        // the delegate has already resolved the closest point
+        int stampIndex = helper.getSelectedIndex();
+        if (stampIndex >= 0) {
+            dispatchTouchDown(stampIndex, x);
+        }
     }
 
     private void dispatchTouchDown(int stampIndex, float stampXCoordinate) {
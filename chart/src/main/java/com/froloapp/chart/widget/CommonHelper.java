@@ -37,24 +37,32 @@ final class CommonHelper {
 
         float approximateStamp = (minAxis + ((maxAxis - minAxis) * toXPosition));
 
-        for (int i = 0; i < points.size(); i++) {
+        // binary search for the first point past the approximate stamp, the stamps are sorted
+        int low = 0;
+        int high = points.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points.get(middle).stamp > approximateStamp) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        final int i = low;
+        if (i == points.size()) {
+            // the position is at the last point or past it, as the float stamp may round up to it
+            return i - 1;
+        }
+        if (i > 0) {
             long stamp = points.get(i).stamp;
-            if (stamp > approximateStamp) {
-                if (i > 0) {
-                    float timestampXPosition = ((float) (stamp - minAxis)) / (maxAxis - minAxis);
-                    long previousTimestamp = points.get(i - 1).stamp;
-                    float previousTimestampXPosition = ((float) (previousTimestamp - minAxis)) / (maxAxis - minAxis);
-                    if (Math.abs(previousTimestampXPosition - toXPosition) < Math.abs(timestampXPosition - toXPosition)) {
-                        return i - 1;
-                    } else {
-                        return i;
-                    }
-                } else {
-                    return i;
-                }
+            float timestampXPosition = ((float) (stamp - minAxis)) / (maxAxis - minAxis);
+            long previousTimestamp = points.get(i - 1).stamp;
+            float previousTimestampXPosition = ((float) (previousTimestamp - minAxis)) / (maxAxis - minAxis);
+            if (Math.abs(previousTimestampXPosition - toXPosition) < Math.abs(timestampXPosition - toXPosition)) {
+                return i - 1;
             }
         }
-        throw new IllegalArgumentException("Invalid timestamp relative position: " + toXPosition);
+        return i;
     }
 
     // finds the left closest point to the given target X position
@@ -68,13 +76,48 @@ final class CommonHelper {
         long minStamp = points.get(0).stamp;
         long maxStamp = points.get(points.size() - 1).stamp;
         long approximatelyStamp = minStamp + (long) ((maxStamp - minStamp) * targetXPosition);
-        for (int i = 0; i < points.size(); i++) {
-            long timestamp = points.get(i).stamp;
-            if (timestamp >= approximatelyStamp) {
-                return Math.max(0, i - 2); // it's a hack. Must be Math.max(0, i - 1)
+        // the first point which stamp is not less than the approximate one, the stamps are sorted
+        int i = findFirstPointIndexFrom(points, approximatelyStamp);
+        if (i == points.size()) {
+            return 0;
+        }
+        return Math.max(0, i - 2); // it's a hack. Must be Math.max(0, i - 1)
+    }
+
+    // finds the right closest point to the given target X position
+    // so that the line drawn up to it covers the position, then returns its list index.
+    static int findVeryRightPointIndex(List<Point> points,
+                                       float targetXPosition) {
+        if (points.isEmpty()) {
+            return -1; // early return
+        }
+
+        long minStamp = points.get(0).stamp;
+        long maxStamp = points.get(points.size() - 1).stamp;
+        long approximatelyStamp = minStamp + (long) ((maxStamp - minStamp) * targetXPosition);
+        // the last point which stamp is not greater than the approximate one, the stamps are sorted
+        int i = findFirstPointIndexFrom(points, approximatelyStamp + 1) - 1;
+        if (i < 0) {
+            return Math.min(points.size() - 1, 1);
+        }
+        return Math.min(points.size() - 1, i + 2);
+    }
+
+    // Checks if both lists describe the same timestamp grid
+    static boolean haveSameStamps(List<Point> points1,
+                                  List<Point> points2) {
+        if (points1 == points2) {
+            return true;
+        }
+        if (points1.size() != points2.size()) {
+            return false;
+        }
+        for (int i = 0; i < points1.size(); i++) {
+            if (points1.get(i).stamp != points2.get(i).stamp) {
+                return false;
             }
         }
-        return 0;
+        return true;
     }
 
     static float calcPointRelativePositionAt(List<Point> points,
@@ -92,7 +135,7 @@ final class CommonHelper {
         return points.size() * (stopXPosition - startXPosition) / pointStep;
     }
 
-    static float findXCoordinate(AbsChartView view,
+    static float findXCoordinate(ChartHost view,
                                  float startXPosition,
                                  float stopXPosition,
                                  float targetXPosition) {
@@ -101,7 +144,7 @@ final class CommonHelper {
         return (view.getPaddingLeft() + xRelative * contentWidth);
     }
 
-    static float findYCoordinate(AbsChartView view,
+    static float findYCoordinate(ChartHost view,
                                  float minValue,
                                  float maxValue,
                                  float targetValue) {
@@ -110,8 +153,34 @@ final class CommonHelper {
         return (int) (view.getMeasuredHeight() - view.getPaddingTop() - view.getFooterHeight() - yRelative * contentHeight);
     }
 
+    // Finds index of the first point, which stamp is not less than the given one,
+    // returns the point count if there is no such point
+    static int findFirstPointIndexFrom(List<Point> points, long stamp) {
+        int low = 0;
+        int high = points.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points.get(middle).stamp < stamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Calculate the value for the given Y coordinate, it's the inverse of findYCoordinate
+    static float findValueAtYCoordinate(ChartHost view,
+                                        float minValue,
+                                        float maxValue,
+                                        float yCoordinate) {
+        int contentHeight = view.getMeasuredHeight() - view.getPaddingTop() - view.getPaddingBottom() - view.getFooterHeight();
+        float yRelative = (view.getMeasuredHeight() - view.getPaddingTop() - view.getFooterHeight() - yCoordinate) / contentHeight;
+        return minValue + yRelative * (maxValue - minValue);
+    }
+
     // Calculate relative X position for the given X coordinate
-    static float calcCoordinateRelativePosition(AbsChartView view,
+    static float calcCoordinateRelativePosition(ChartHost view,
                                                 float startXPosition,
                                                 float stopXPosition,
                                                 float xCoordinate) {
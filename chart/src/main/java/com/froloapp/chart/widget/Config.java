@@ -8,6 +8,10 @@ class Config {
 
     static final float TEXT_SIZE_IN_SP = 14f;
 
+    // The narrowest window by default, as a part of the whole chart.
+    // Pinch zoom and the slider frame share it, so the slider can show and drag any window the chart zooms to
+    static final float MIN_X_RANGE = 0.2f;
+
     private Config() {
     }
 }
@@ -0,0 +1,174 @@
+package com.froloapp.chart.widget;
+
+
+/**
+ * Watches how long a chart view takes to draw a frame and lowers or raises drawing quality
+ * to keep the draw time within the target budget;
+ * Quality is described by levels, from {@link #LEVEL_FULL} to {@link #LEVEL_LOWEST};
+ * A level is lowered as soon as frames are steadily too slow, but raised only
+ * after a long run of fast frames, so the chart doesn't flicker between levels;
+ * When the view comes to rest, the full quality is restored at once;
+ */
+public final class FrameGovernor {
+
+    public interface OnLevelChangedListener {
+        void onLevelChanged(FrameGovernor governor, int level);
+    }
+
+    /**
+     * Everything is drawn in full quality.
+     */
+    public static final int LEVEL_FULL = 0;
+    /**
+     * Lines are drawn with at most two vertices per pixel.
+     */
+    public static final int LEVEL_REDUCED_VERTICES = 1;
+    /**
+     * Lines are drawn with one vertex per pixel and without anti-aliasing.
+     */
+    public static final int LEVEL_NO_ANTI_ALIAS = 2;
+    /**
+     * Lines are drawn with one vertex per two pixels, phantom labels are skipped,
+     * animations are drawn at most at 30 frames per second.
+     */
+    public static final int LEVEL_LOWEST = 3;
+
+    private static final float[] MAX_VERTICES_PER_PIXEL = { 0f, 2f, 1f, 0.5f };
+    private static final long[] MIN_FRAME_INTERVAL_MILLIS = { 0L, 0L, 0L, 33L };
+
+    private static final long DEFAULT_TARGET_DRAW_TIME_NANOS = 8_000_000L; // half of a 60 fps frame
+
+    // Weight of the last frame in the average draw time
+    private static final float AVERAGE_WEIGHT = 0.2f;
+    // Average must drop below this part of the budget before the quality is raised
+    private static final float RAISE_THRESHOLD = 0.5f;
+    // Number of frames that must be measured at a level before it may be lowered
+    private static final int FRAMES_BEFORE_LOWERING = 5;
+    // Number of fast frames in a row before the quality is raised
+    private static final int FRAMES_BEFORE_RAISING = 60;
+
+    private boolean mIsEnabled = true;
+    private long mTargetDrawTimeNanos = DEFAULT_TARGET_DRAW_TIME_NANOS;
+
+    private int mLevel = LEVEL_FULL;
+    private float mAverageDrawTimeNanos = 0f;
+    private int mFramesAtLevel = 0;
+    private int mFastFramesInRow = 0;
+
+    // Applies the level to the owner view
+    private final Runnable mApplyLevel;
+
+    private OnLevelChangedListener mListener;
+
+    FrameGovernor(Runnable applyLevel) {
+        this.mApplyLevel = applyLevel;
+    }
+
+    public void setOnLevelChangedListener(OnLevelChangedListener l) {
+        this.mListener = l;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * Disabled governor keeps the full quality level.
+     */
+    public void setEnabled(boolean enabled) {
+        mIsEnabled = enabled;
+        if (!enabled) {
+            setLevel(LEVEL_FULL);
+        }
+    }
+
+    public long getTargetDrawTimeNanos() {
+        return mTargetDrawTimeNanos;
+    }
+
+    /**
+     * Sets how long a single onDraw call may take.
+     */
+    public void setTargetDrawTimeNanos(long nanos) {
+        mTargetDrawTimeNanos = nanos;
+    }
+
+    public long getAverageDrawTimeNanos() {
+        return (long) mAverageDrawTimeNanos;
+    }
+
+    float getMaxVerticesPerPixel() {
+        return MAX_VERTICES_PER_PIXEL[mLevel];
+    }
+
+    boolean isAntiAliasEnabled() {
+        return mLevel < LEVEL_NO_ANTI_ALIAS;
+    }
+
+    boolean willDrawPhantomLabels() {
+        return mLevel < LEVEL_LOWEST;
+    }
+
+    long getMinFrameIntervalMillis() {
+        return MIN_FRAME_INTERVAL_MILLIS[mLevel];
+    }
+
+    // Called after each frame, returns true if the level has changed
+    boolean onFrameDrawn(long drawTimeNanos) {
+        if (!mIsEnabled) {
+            return false;
+        }
+
+        if (mAverageDrawTimeNanos == 0f) {
+            mAverageDrawTimeNanos = drawTimeNanos;
+        } else {
+            mAverageDrawTimeNanos += (drawTimeNanos - mAverageDrawTimeNanos) * AVERAGE_WEIGHT;
+        }
+        mFramesAtLevel++;
+
+        if (mAverageDrawTimeNanos < mTargetDrawTimeNanos * RAISE_THRESHOLD) {
+            mFastFramesInRow++;
+        } else {
+            mFastFramesInRow = 0;
+        }
+
+        if (mAverageDrawTimeNanos > mTargetDrawTimeNanos
+                && mFramesAtLevel >= FRAMES_BEFORE_LOWERING
+                && mLevel < LEVEL_LOWEST) {
+            return setLevel(mLevel + 1);
+        }
+
+        if (mFastFramesInRow >= FRAMES_BEFORE_RAISING
+                && mLevel > LEVEL_FULL) {
+            return setLevel(mLevel - 1);
+        }
+
+        return false;
+    }
+
+    // Called when no frame has been drawn for a while, the next frame is drawn in full quality.
+    // Returns true if the level has changed
+    boolean onIdle() {
+        return setLevel(LEVEL_FULL);
+    }
+
+    private boolean setLevel(int level) {
+        mFramesAtLevel = 0;
+        mFastFramesInRow = 0;
+        if (mLevel != level) {
+            mLevel = level;
+            // the average was measured at the old level, one slow burst must not lower the level twice
+            mAverageDrawTimeNanos = 0f;
+            mApplyLevel.run();
+            if (mListener != null) {
+                mListener.onLevelChanged(this, level);
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -2,22 +2,41 @@ package com.froloapp.chart.widget;
 
 
 public final class Line {
-    private float[] mValues;
+    // Values may be encoded compactly, be a column of the chart's value matrix or live in a buffer outside the heap
+    private LineValues mValues;
+    // Position of the line in its chart, so the line is found without scanning
+    private int mIndex;
     private String name;
     private int color;
 
-    Line(float[] values, String name, int color) {
+    // Range statistics, built on the first query or in the background by ChartModel.setChartAsync
+    private LineStats mStats;
+
+    Line(LineValues values, int index, String name, int color) {
         this.mValues = values;
+        this.mIndex = index;
         this.name = name;
         this.color = color;
     }
 
     public int getValueCount() {
-        return mValues.length;
+        return mValues.size();
     }
 
     public float getValueAt(int index) {
-        return mValues[index];
+        return mValues.get(index);
+    }
+
+    // Reads count values at fromIndex, fromIndex + step and so on into out in one call
+    void getValues(int fromIndex, int step, float[] out, int outOffset, int count) {
+        mValues.get(fromIndex, step, out, outOffset, count);
+    }
+
+    /**
+     * Returns the index of this line in its chart;
+     */
+    public int getIndex() {
+        return mIndex;
     }
 
     public String getName() {
@@ -27,4 +46,11 @@ public final class Line {
     public int getColor() {
         return color;
     }
+
+    synchronized LineStats getStats() {
+        if (mStats == null) {
+            mStats = new LineStats(this);
+        }
+        return mStats;
+    }
 }
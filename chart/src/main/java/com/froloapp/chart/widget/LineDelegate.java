@@ -19,13 +19,18 @@ final class LineDelegate {
 
     private static final float DEFAULT_LINE_STROKE_WIDTH_IN_DP = 1.5f;
 
-    private final AbsChartView mView;
-    private final List<Point> mPoints;
-    private final Line mLine;
+    private final ChartHost mView;
+    private List<Point> mPoints;
+    // Cached relative X positions of the points, shared with the chart delegate
+    private float[] mPointXPositions;
+    private Line mLine;
 
     private float mStartXPercentage = 0f;
     private float mStopXPercentage = 1f;
 
+    // Limits how many vertices per pixel of content width are drawn, 0 means no limit
+    private float mMaxVerticesPerPixel = 0f;
+
     private float mAlpha = 1f;
     private boolean mIsVisible = true;
     private boolean mIsAnimating = false;
@@ -65,26 +70,63 @@ final class LineDelegate {
 
     // Paint tools
     private final Paint mPaint;
-    // buffering line (collecting (x; y) coors of a chart line to draw)
-    private float[] mBufferLinePoints;
 
-    LineDelegate(AbsChartView view, List<Point> points, Line line) {
+    LineDelegate(ChartHost view, List<Point> points, float[] pointXPositions, Line line) {
         this.mView = view;
         this.mPoints = points;
+        this.mPointXPositions = pointXPositions;
         this.mLine = line;
 
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setStyle(Paint.Style.STROKE);
         paint.setStrokeWidth(Misc.dpToPx(DEFAULT_LINE_STROKE_WIDTH_IN_DP, view.getContext()));
         mPaint = paint;
-
-        mBufferLinePoints = new float[points.size() * 4];
     }
 
     private void requestRedraw() {
         mView.invalidate();
     }
 
+    // Reconfigures this delegate for another line, so it can be reused when the chart changes
+    void setLine(List<Point> points, float[] pointXPositions, Line line) {
+        if (mFadeAnimator != null) {
+            mFadeAnimator.cancel();
+        }
+        this.mPoints = points;
+        this.mPointXPositions = pointXPositions;
+        this.mLine = line;
+        this.mAlpha = 1f;
+        this.mIsVisible = true;
+        this.mIsAnimating = false;
+        requestRedraw();
+    }
+
+    void setRenderQuality(float maxVerticesPerPixel, boolean antiAlias) {
+        if (mMaxVerticesPerPixel != maxVerticesPerPixel
+                || mPaint.isAntiAlias() != antiAlias) {
+            mMaxVerticesPerPixel = maxVerticesPerPixel;
+            mPaint.setAntiAlias(antiAlias);
+            requestRedraw();
+        }
+    }
+
+    // Finds the step by which points are taken so that the vertex limit is respected.
+    // The step depends on the window width only and is a power of two,
+    // so the picked points stay the same while the window is dragged
+    private int calcPointStep(float windowStartXPosition, float windowStopXPosition) {
+        if (mMaxVerticesPerPixel <= 0f) {
+            return 1;
+        }
+        int contentWidth = mView.getMeasuredWidth() - mView.getPaddingLeft() - mView.getPaddingRight();
+        int maxVertexCount = Math.max(2, (int) (contentWidth * mMaxVerticesPerPixel));
+        int pointCount = (int) (mPoints.size() * (windowStopXPosition - windowStartXPosition)) + 1;
+        int step = 1;
+        while (pointCount / step > maxVertexCount) {
+            step *= 2;
+        }
+        return step;
+    }
+
     Line getLine() {
         return mLine;
     }
@@ -93,83 +135,109 @@ final class LineDelegate {
         return mIsVisible;
     }
 
+    // The chart delegate decides how the lines layer is redrawn after the window moves,
+    // so no redraw is requested here
     void setXPosition(float startXPosition, float stopXPosition) {
         this.mStartXPercentage = startXPosition;
         this.mStopXPercentage = stopXPosition;
-        requestRedraw();
     }
 
-    void show(boolean animate) {
-        mIsVisible = true;
-
+    // The same animator is reused for every fade of this delegate
+    private void fadeTo(float targetAlpha, boolean animate) {
         if (mFadeAnimator != null) {
             mFadeAnimator.cancel();
-            mFadeAnimator = null;
         }
 
         if (animate) {
             float startAlphaValue = mAlpha;
-            ValueAnimator newAnim = ValueAnimator.ofFloat(startAlphaValue, 1f);
-            newAnim.addListener(mAnimListener);
-            newAnim.addUpdateListener(mUpdater);
-            newAnim.setDuration(FADE_ANIM_DURATION);
-            newAnim.setInterpolator(FADE_INTERPOLATOR);
-            newAnim.start();
-
-            mFadeAnimator = newAnim;
+            ValueAnimator anim = mFadeAnimator;
+            if (anim == null) {
+                anim = ValueAnimator.ofFloat(startAlphaValue, targetAlpha);
+                anim.addListener(mAnimListener);
+                anim.addUpdateListener(mUpdater);
+                anim.setDuration(FADE_ANIM_DURATION);
+                anim.setInterpolator(FADE_INTERPOLATOR);
+                mFadeAnimator = anim;
+            } else {
+                anim.setFloatValues(startAlphaValue, targetAlpha);
+            }
+            anim.start();
         } else {
+            mAlpha = targetAlpha;
             requestRedraw();
         }
     }
 
+    void show(boolean animate) {
+        mIsVisible = true;
+        fadeTo(1f, animate);
+    }
+
     void hide(boolean animate) {
         mIsVisible = false;
-
-        if (mFadeAnimator != null) {
-            mFadeAnimator.cancel();
-            mFadeAnimator = null;
-        }
-
-        if (animate) {
-            float startAlphaValue = mAlpha;
-            ValueAnimator newAnim = ValueAnimator.ofFloat(startAlphaValue, 0f);
-            newAnim.addListener(mAnimListener);
-            newAnim.addUpdateListener(mUpdater);
-            newAnim.setDuration(FADE_ANIM_DURATION);
-            newAnim.setInterpolator(FADE_INTERPOLATOR);
-            newAnim.start();
-
-            mFadeAnimator = newAnim;
-        } else {
-            requestRedraw();
-        }
+        fadeTo(0f, animate);
     }
 
     void draw(Canvas canvas, float minValue, float maxValue) {
+        draw(canvas,
+                minValue,
+                maxValue,
+                mStartXPercentage,
+                mStopXPercentage,
+                mStartXPercentage,
+                mStopXPercentage);
+    }
+
+    // Draws the part of the line between fromXPosition and toXPosition
+    // as if the window were windowStartXPosition..windowStopXPosition.
+    // The bounding points are found by binary searches, so a narrow part costs as little as its points
+    void draw(Canvas canvas,
+              float minValue,
+              float maxValue,
+              float windowStartXPosition,
+              float windowStopXPosition,
+              float fromXPosition,
+              float toXPosition) {
         // don't draw the line if it's nor visible neither animating
         if (!mIsVisible && !mIsAnimating) {
             return;
         }
 
-        final int pointCount = mPoints.size();
         final int startPointIndex = CommonHelper.findVeryLeftPointIndex(
                 mPoints,
-                mStartXPercentage);
+                fromXPosition);
 
         if (startPointIndex == -1) {
             return;
         }
 
-        final float startPointXPosition = CommonHelper.calcPointRelativePositionAt(
+        final int stopPointIndex = CommonHelper.findVeryRightPointIndex(
                 mPoints,
-                startPointIndex);
+                toXPosition);
+
+        final int pointStep = calcPointStep(windowStartXPosition, windowStopXPosition);
+        final int alignedStartPointIndex = (startPointIndex / pointStep) * pointStep; // normalizing
+
+        // buffering line (collecting (x; y) coors of a chart line to draw)
+        final float[] bufferLinePoints = VertexBufferPool.get().obtainLineBuffer(
+                (stopPointIndex - alignedStartPointIndex) / pointStep + 2);
+
+        // the values of the drawn points are read at once: every pointStep-th one and then the stop one
+        final int valueCount = (Math.max(0, stopPointIndex - alignedStartPointIndex) + pointStep - 1) / pointStep + 1;
+        final float[] values = VertexBufferPool.get().obtainValueBuffer(valueCount);
+        mLine.getValues(alignedStartPointIndex, pointStep, values, 0, valueCount - 1);
+        values[valueCount - 1] = mLine.getValueAt(Math.max(alignedStartPointIndex, stopPointIndex));
+
+        final float[] pointXPositions = mPointXPositions;
+        final float startPointXPosition = pointXPositions[alignedStartPointIndex];
 
         // drawing
-        int pointIndex = startPointIndex;
+        int pointIndex = alignedStartPointIndex;
         float pointXPosition = startPointXPosition;
         boolean outsideBounds = false; // make it true when the render-loop must break
 
-        float value = mLine.getValueAt(pointIndex);
+        int valueIndex = 0;
+        float value = values[valueIndex++];
 
         // preparing paint tool
         mPaint.setColor(mLine.getColor());
@@ -184,8 +252,8 @@ final class LineDelegate {
 
         float xCoor = CommonHelper.findXCoordinate(
                 mView,
-                mStartXPercentage,
-                mStopXPercentage,
+                windowStartXPosition,
+                windowStopXPosition,
                 pointXPosition);
         float yCoor = CommonHelper.findYCoordinate(
                 mView,
@@ -194,22 +262,19 @@ final class LineDelegate {
                 value);
 
         int k = 0; // just a counter
-        mBufferLinePoints[k++] = xCoor;
-        mBufferLinePoints[k++] = yCoor;
+        bufferLinePoints[k++] = xCoor;
+        bufferLinePoints[k++] = yCoor;
 
-        while (pointIndex < pointCount - 1) {
-            pointIndex++;
-            // it could be optimized
-            pointXPosition = CommonHelper.calcPointRelativePositionAt(
-                    mPoints,
-                    pointIndex);
+        while (pointIndex < stopPointIndex) {
+            pointIndex = Math.min(pointIndex + pointStep, stopPointIndex);
+            pointXPosition = pointXPositions[pointIndex];
 
-            value = mLine.getValueAt(pointIndex);
+            value = values[valueIndex++];
 
             xCoor = CommonHelper.findXCoordinate(
                     mView,
-                    mStartXPercentage,
-                    mStopXPercentage,
+                    windowStartXPosition,
+                    windowStopXPosition,
                     pointXPosition);
             yCoor = CommonHelper.findYCoordinate(
                     mView,
@@ -217,24 +282,24 @@ final class LineDelegate {
                     maxValue,
                     value);
 
-            mBufferLinePoints[k++] = xCoor;
-            mBufferLinePoints[k++] = yCoor;
+            bufferLinePoints[k++] = xCoor;
+            bufferLinePoints[k++] = yCoor;
 
             if (outsideBounds) {
                 break;
             }
 
-            if (pointXPosition > mStopXPercentage) {
+            if (pointXPosition > toXPosition) {
                 // It's enough. No need to draw lines after next point as they will be invisible.
                 // So allow to draw one part more and exit;
                 outsideBounds = true;
             }
 
-            mBufferLinePoints[k] = mBufferLinePoints[k++ - 2];
-            mBufferLinePoints[k] = mBufferLinePoints[k++ - 2];
+            bufferLinePoints[k] = bufferLinePoints[k++ - 2];
+            bufferLinePoints[k] = bufferLinePoints[k++ - 2];
         }
 
-        canvas.drawLines(mBufferLinePoints, 0, k - 1, mPaint);
+        canvas.drawLines(bufferLinePoints, 0, k - 1, mPaint);
     }
 
     void attach() {
@@ -246,7 +311,6 @@ final class LineDelegate {
     void detach() {
         if (mFadeAnimator != null) {
             mFadeAnimator.cancel();
-            mFadeAnimator = null;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.froloapp.chart.widget;
+
+
+// Answers sum, min and max queries over ranges of line values in constant time.
+// Values are split into blocks: prefix sums and a sparse table of min and max indices are built over whole blocks,
+// the partial blocks at the ends of a range are scanned. It keeps memory at O(n / B * log(n / B))
+// instead of O(n log n), while a query still touches at most 2 * BLOCK_SIZE values.
+final class LineStats {
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final Line mLine;
+    private final int mValueCount;
+
+    // mBlockSums[b] is the sum of the values in blocks [0, b)
+    private final double[] mBlockSums;
+    // mMinIndices[k][b] is the index of the min value in blocks [b, b + 2^k), the same for max
+    private final int[][] mMinIndices;
+    private final int[][] mMaxIndices;
+
+    // Reused by the queries, so they are serialized
+    private final Scan mScan;
+
+    LineStats(Line line) {
+        mLine = line;
+        final int valueCount = line.getValueCount();
+        mValueCount = valueCount;
+
+        final int blockCount = (valueCount + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        final double[] blockSums = new double[blockCount + 1];
+        final int levelCount = blockCount > 0 ? 32 - Integer.numberOfLeadingZeros(blockCount) : 0;
+        final int[][] minIndices = new int[levelCount][];
+        final int[][] maxIndices = new int[levelCount][];
+
+        if (levelCount > 0) {
+            final int[] blockMinIndices = new int[blockCount];
+            final int[] blockMaxIndices = new int[blockCount];
+            // values are read a block at a time
+            final float[] chunk = new float[BLOCK_SIZE];
+            for (int b = 0; b < blockCount; b++) {
+                final int from = b << BLOCK_SHIFT;
+                final int count = Math.min(valueCount, from + BLOCK_SIZE) - from;
+                line.getValues(from, 1, chunk, 0, count);
+                double sum = 0d;
+                int minK = 0;
+                int maxK = 0;
+                for (int k = 0; k < count; k++) {
+                    float value = chunk[k];
+                    sum += value;
+                    if (value < chunk[minK]) {
+                        minK = k;
+                    }
+                    if (value > chunk[maxK]) {
+                        maxK = k;
+                    }
+                }
+                blockSums[b + 1] = blockSums[b] + sum;
+                blockMinIndices[b] = from + minK;
+                blockMaxIndices[b] = from + maxK;
+            }
+            minIndices[0] = blockMinIndices;
+            maxIndices[0] = blockMaxIndices;
+
+            for (int k = 1; k < levelCount; k++) {
+                final int half = 1 << (k - 1);
+                final int size = blockCount - (1 << k) + 1;
+                final int[] prevMin = minIndices[k - 1];
+                final int[] prevMax = maxIndices[k - 1];
+                final int[] levelMin = new int[size];
+                final int[] levelMax = new int[size];
+                for (int b = 0; b < size; b++) {
+                    levelMin[b] = minIndexOf(prevMin[b], prevMin[b + half]);
+                    levelMax[b] = maxIndexOf(prevMax[b], prevMax[b + half]);
+                }
+                minIndices[k] = levelMin;
+                maxIndices[k] = levelMax;
+            }
+        }
+
+        mBlockSums = blockSums;
+        mMinIndices = minIndices;
+        mMaxIndices = maxIndices;
+        mScan = new Scan(line);
+    }
+
+    // Finds the statistics of the values in [fromIndex, toIndex], both inclusive
+    synchronized void query(RangeStats out, int fromIndex, int toIndex) {
+        fromIndex = Math.max(0, fromIndex);
+        toIndex = Math.min(mValueCount - 1, toIndex);
+        if (fromIndex > toIndex) {
+            out.clear();
+            return;
+        }
+
+        final int fromBlock = fromIndex >> BLOCK_SHIFT;
+        final int toBlock = toIndex >> BLOCK_SHIFT;
+
+        final Scan scan = mScan;
+        scan.reset(fromIndex);
+        if (toBlock - fromBlock <= 1) {
+            // short range, scanning it
+            scan.add(fromIndex, toIndex + 1);
+            scan.writeTo(out, toIndex - fromIndex + 1);
+            return;
+        }
+
+        // the head, the whole blocks between and the tail, in this order so the first extremum wins
+        scan.add(fromIndex, (fromBlock + 1) << BLOCK_SHIFT);
+
+        final int firstBlock = fromBlock + 1;
+        final int lastBlock = toBlock - 1;
+        if (firstBlock <= lastBlock) {
+            scan.sum += mBlockSums[lastBlock + 1] - mBlockSums[firstBlock];
+            final int level = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock + 1);
+            final int secondBlock = lastBlock - (1 << level) + 1;
+            scan.offerMin(minIndexOf(mMinIndices[level][firstBlock], mMinIndices[level][secondBlock]));
+            scan.offerMax(maxIndexOf(mMaxIndices[level][firstBlock], mMaxIndices[level][secondBlock]));
+        }
+
+        scan.add(toBlock << BLOCK_SHIFT, toIndex + 1);
+        scan.writeTo(out, toIndex - fromIndex + 1);
+    }
+
+    // Returns the index of the smaller value, the lower index on ties
+    private int minIndexOf(int i, int j) {
+        float a = mLine.getValueAt(i);
+        float b = mLine.getValueAt(j);
+        if (a < b || (a == b && i < j)) {
+            return i;
+        }
+        return j;
+    }
+
+    // Returns the index of the bigger value, the lower index on ties
+    private int maxIndexOf(int i, int j) {
+        float a = mLine.getValueAt(i);
+        float b = mLine.getValueAt(j);
+        if (a > b || (a == b && i < j)) {
+            return i;
+        }
+        return j;
+    }
+
+    // Accumulates sum, min and max of the scanned values, reading them with bulk reads
+    private static final class Scan {
+        private final Line mLine;
+        private final float[] mChunk = new float[BLOCK_SIZE];
+
+        double sum;
+        int minIndex;
+        float min;
+        int maxIndex;
+        float max;
+
+        Scan(Line line) {
+            mLine = line;
+        }
+
+        // Starts a scan with the value at the index as the min and the max
+        void reset(int firstIndex) {
+            sum = 0d;
+            minIndex = firstIndex;
+            maxIndex = firstIndex;
+            min = mLine.getValueAt(firstIndex);
+            max = min;
+        }
+
+        // Adds the values in [fromIndex, toIndex), the first extremum wins
+        void add(int fromIndex, int toIndex) {
+            final float[] chunk = mChunk;
+            for (int start = fromIndex; start < toIndex; start += BLOCK_SIZE) {
+                final int count = Math.min(BLOCK_SIZE, toIndex - start);
+                mLine.getValues(start, 1, chunk, 0, count);
+                for (int k = 0; k < count; k++) {
+                    float value = chunk[k];
+                    sum += value;
+                    if (value < min) {
+                        min = value;
+                        minIndex = start + k;
+                    }
+                    if (value > max) {
+                        max = value;
+                        maxIndex = start + k;
+                    }
+                }
+            }
+        }
+
+        // Takes the value at the index as the min, if it's smaller or equal at a lower index
+        void offerMin(int index) {
+            float value = mLine.getValueAt(index);
+            if (value < min || (value == min && index < minIndex)) {
+                min = value;
+                minIndex = index;
+            }
+        }
+
+        // Takes the value at the index as the max, if it's bigger or equal at a lower index
+        void offerMax(int index) {
+            float value = mLine.getValueAt(index);
+            if (value > max || (value == max && index < maxIndex)) {
+                max = value;
+                maxIndex = index;
+            }
+        }
+
+        void writeTo(RangeStats out, int count) {
+            out.set(count, sum, min, minIndex, max, maxIndex);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.froloapp.chart.widget;
+
+
+// Storage of line values. Values may be kept in a compact encoding and are decoded on each read.
+// The encoding is chosen by encode(): the most compact one, which keeps every value within the allowed error.
+// Values may also live outside the heap, see BufferValues.
+abstract class LineValues {
+
+    abstract int size();
+
+    abstract float get(int index);
+
+    // Reads count values at fromIndex, fromIndex + step and so on into out.
+    // Hot paths read ranges with it, so the storage is read in a tight loop instead of a call per value
+    void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+        for (int k = 0; k < count; k++) {
+            out[outOffset + k] = get(fromIndex + k * step);
+        }
+    }
+
+    // Chooses the most compact encoding, in which no value differs from the original by more than maxError.
+    // maxError = 0 allows only lossless encodings
+    static LineValues encode(float[] values, float maxError) {
+        final int count = values.length;
+        if (count == 0) {
+            return new FloatValues(values, 0, 1, 0);
+        }
+
+        float min = values[0];
+        float max = values[0];
+        boolean integral = true;
+        for (float value : values) {
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            if (integral && value != (float) Math.rint(value)) {
+                integral = false;
+            }
+        }
+
+        LineValues encoded = null;
+        // integers are encoded as is, others are quantized evenly over the range
+        if (integral && max - min <= ScaledByteValues.LEVELS - 1) {
+            encoded = ScaledByteValues.tryEncode(values, min, 1f, maxError);
+        }
+        if (encoded == null && maxError > 0f) {
+            encoded = ScaledByteValues.tryEncode(values, min, (max - min) / (ScaledByteValues.LEVELS - 1), maxError);
+        }
+        if (encoded == null && integral && max - min <= ScaledShortValues.LEVELS - 1) {
+            encoded = ScaledShortValues.tryEncode(values, min, 1f, maxError);
+        }
+        if (encoded == null && maxError > 0f) {
+            encoded = ScaledShortValues.tryEncode(values, min, (max - min) / (ScaledShortValues.LEVELS - 1), maxError);
+        }
+        if (encoded == null) {
+            encoded = HalfValues.tryEncode(values, maxError);
+        }
+        if (encoded == null) {
+            encoded = new FloatValues(values, 0, 1, count);
+        }
+        return encoded;
+    }
+
+    // Plain floats, possibly a strided column of a bigger array
+    static final class FloatValues extends LineValues {
+        private final float[] mValues;
+        private final int mOffset;
+        private final int mStride;
+        private final int mSize;
+
+        FloatValues(float[] values, int offset, int stride, int size) {
+            mValues = values;
+            mOffset = offset;
+            mStride = stride;
+            mSize = size;
+        }
+
+        @Override int size() {
+            return mSize;
+        }
+
+        @Override float get(int index) {
+            return mValues[mOffset + index * mStride];
+        }
+
+        @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+            final int delta = step * mStride;
+            int position = mOffset + fromIndex * mStride;
+            if (delta == 1) {
+                System.arraycopy(mValues, position, out, outOffset, count);
+                return;
+            }
+            for (int k = 0; k < count; k++, position += delta) {
+                out[outOffset + k] = mValues[position];
+            }
+        }
+    }
+
+    // value = offset + (code & 0xFF) * scale
+    static final class ScaledByteValues extends LineValues {
+        static final int LEVELS = 1 << 8;
+
+        private final byte[] mCodes;
+        private final float mOffset;
+        private final float mScale;
+
+        private ScaledByteValues(byte[] codes, float offset, float scale) {
+            mCodes = codes;
+            mOffset = offset;
+            mScale = scale;
+        }
+
+        /* Nullable */
+        static ScaledByteValues tryEncode(float[] values, float offset, float scale, float maxError) {
+            final byte[] codes = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                int code = scale > 0f ? Math.round((values[i] - offset) / scale) : 0;
+                code = Math.max(0, Math.min(LEVELS - 1, code));
+                // NaN fails this check too
+                if (!(Math.abs(offset + code * scale - values[i]) <= maxError)) {
+                    return null;
+                }
+                codes[i] = (byte) code;
+            }
+            return new ScaledByteValues(codes, offset, scale);
+        }
+
+        @Override int size() {
+            return mCodes.length;
+        }
+
+        @Override float get(int index) {
+            return mOffset + (mCodes[index] & 0xFF) * mScale;
+        }
+
+        @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+            final byte[] codes = mCodes;
+            for (int k = 0, i = fromIndex; k < count; k++, i += step) {
+                out[outOffset + k] = mOffset + (codes[i] & 0xFF) * mScale;
+            }
+        }
+    }
+
+    // value = offset + (code & 0xFFFF) * scale
+    static final class ScaledShortValues extends LineValues {
+        static final int LEVELS = 1 << 16;
+
+        private final short[] mCodes;
+        private final float mOffset;
+        private final float mScale;
+
+        private ScaledShortValues(short[] codes, float offset, float scale) {
+            mCodes = codes;
+            mOffset = offset;
+            mScale = scale;
+        }
+
+        /* Nullable */
+        static ScaledShortValues tryEncode(float[] values, float offset, float scale, float maxError) {
+            final short[] codes = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                int code = scale > 0f ? Math.round((values[i] - offset) / scale) : 0;
+                code = Math.max(0, Math.min(LEVELS - 1, code));
+                // NaN fails this check too
+                if (!(Math.abs(offset + code * scale - values[i]) <= maxError)) {
+                    return null;
+                }
+                codes[i] = (short) code;
+            }
+            return new ScaledShortValues(codes, offset, scale);
+        }
+
+        @Override int size() {
+            return mCodes.length;
+        }
+
+        @Override float get(int index) {
+            return mOffset + (mCodes[index] & 0xFFFF) * mScale;
+        }
+
+        @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+            final short[] codes = mCodes;
+            for (int k = 0, i = fromIndex; k < count; k++, i += step) {
+                out[outOffset + k] = mOffset + (codes[i] & 0xFFFF) * mScale;
+            }
+        }
+    }
+
+    // IEEE 754 half precision floats, android.util.Half is available since API 26 only
+    static final class HalfValues extends LineValues {
+        private final short[] mHalves;
+
+        private HalfValues(short[] halves) {
+            mHalves = halves;
+        }
+
+        /* Nullable */
+        static HalfValues tryEncode(float[] values, float maxError) {
+            final short[] halves = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                short half = toHalf(values[i]);
+                float decoded = toFloat(half);
+                if (decoded != values[i] && !(Math.abs(decoded - values[i]) <= maxError)) {
+                    return null;
+                }
+                halves[i] = half;
+            }
+            return new HalfValues(halves);
+        }
+
+        @Override int size() {
+            return mHalves.length;
+        }
+
+        @Override float get(int index) {
+            return toFloat(mHalves[index]);
+        }
+
+        @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+            final short[] halves = mHalves;
+            for (int k = 0, i = fromIndex; k < count; k++, i += step) {
+                out[outOffset + k] = toFloat(halves[i]);
+            }
+        }
+
+        // Rounds to the nearest half, ties to even
+        static short toHalf(float value) {
+            final int bits = Float.floatToRawIntBits(value);
+            final int sign = (bits >>> 16) & 0x8000;
+            final int exponent = (bits >>> 23) & 0xFF;
+            int mantissa = bits & 0x7FFFFF;
+
+            if (exponent == 0xFF) {
+                // infinity or NaN
+                return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+            }
+            int halfExponent = exponent - 127 + 15;
+            if (halfExponent >= 0x1F) {
+                // overflow
+                return (short) (sign | 0x7C00);
+            }
+            if (halfExponent <= 0) {
+                if (halfExponent < -10) {
+                    // underflow
+                    return (short) sign;
+                }
+                // subnormal
+                mantissa |= 0x800000;
+                final int shift = 14 - halfExponent;
+                int halfMantissa = mantissa >> shift;
+                final int rest = mantissa & ((1 << shift) - 1);
+                final int halfway = 1 << (shift - 1);
+                if (rest > halfway || (rest == halfway && (halfMantissa & 1) != 0)) {
+                    halfMantissa++;
+                }
+                return (short) (sign | halfMantissa);
+            }
+            int half = sign | (halfExponent << 10) | (mantissa >> 13);
+            final int rest = mantissa & 0x1FFF;
+            if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+                // may carry into the exponent, that's still correct
+                half++;
+            }
+            return (short) half;
+        }
+
+        static float toFloat(short half) {
+            final int bits = half & 0xFFFF;
+            final int sign = (bits & 0x8000) << 16;
+            final int exponent = (bits >>> 10) & 0x1F;
+            final int mantissa = bits & 0x3FF;
+
+            if (exponent == 0) {
+                // zero or subnormal
+                float value = mantissa * (1f / (1 << 24));
+                return sign != 0 ? -value : value;
+            }
+            if (exponent == 0x1F) {
+                return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+            }
+            return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.froloapp.chart.widget;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+// Runs a task over a range of indices, splitting the range between worker threads if the work is big enough.
+// Each part writes only to its own indices, so the result is the same for any split.
+// ForkJoinPool is available since API 21 only, so the range is split into equal parts on a fixed pool.
+final class ParallelRange {
+
+    interface Task {
+        // Processes indices in [fromIndex, toIndex)
+        void run(int fromIndex, int toIndex);
+    }
+
+    private static final String WORKER_THREAD_NAME = "ChartWorkerThread";
+
+    // Work below this number of operations is done on the calling thread,
+    // it would take less time than waking up the workers
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    // Parts are not made smaller than this number of indices
+    private static final int MIN_PART_SIZE = 1024;
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService sWorkers;
+
+    private ParallelRange() {
+    }
+
+    // Runs the task over [0, size), costPerIndex is a rough number of operations done per index
+    static void run(int size, long costPerIndex, Task task) {
+        final int partCount = (int) Math.min(PARALLELISM, size / MIN_PART_SIZE);
+        if (partCount <= 1 || size * costPerIndex < PARALLEL_THRESHOLD) {
+            task.run(0, size);
+            return;
+        }
+
+        final ExecutorService workers = getWorkers();
+        final Future<?>[] futures = new Future<?>[partCount - 1];
+        for (int i = 1; i < partCount; i++) {
+            futures[i - 1] = workers.submit(createPart(task,
+                    (int) ((long) size * i / partCount),
+                    (int) ((long) size * (i + 1) / partCount)));
+        }
+        // the calling thread takes the first part
+        task.run(0, (int) ((long) size / partCount));
+
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            // the parts must be finished anyway, the interruption is restored afterwards
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Runnable createPart(final Task task, final int fromIndex, final int toIndex) {
+        return new Runnable() {
+            @Override public void run() {
+                task.run(fromIndex, toIndex);
+            }
+        };
+    }
+
+    private static synchronized ExecutorService getWorkers() {
+        if (sWorkers == null) {
+            // the calling thread is busy with a part too;
+            // workers keep the default priority, as the main thread may be waiting for them
+            sWorkers = Executors.newFixedThreadPool(Math.max(1, PARALLELISM - 1), new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, WORKER_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWorkers;
+    }
+}
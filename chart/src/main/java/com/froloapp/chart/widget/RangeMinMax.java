@@ -0,0 +1,64 @@
+package com.froloapp.chart.widget;
+
+
+// Segment tree over local minimums and maximums of the points.
+// Finds min and max in a range of indexes in O(log n), so moving the window doesn't scan all the points.
+final class RangeMinMax {
+    // Leaves are stored at [size, 2 * size), each inner node i covers nodes 2 * i and 2 * i + 1
+    private float[] mMin = new float[0];
+    private float[] mMax = new float[0];
+    private int mSize = 0;
+
+    // Builds the tree over the first size values of the arrays
+    void build(float[] min, float[] max, int size) {
+        if (mMin.length < size * 2) {
+            mMin = new float[size * 2];
+            mMax = new float[size * 2];
+        }
+        mSize = size;
+        System.arraycopy(min, 0, mMin, size, size);
+        System.arraycopy(max, 0, mMax, size, size);
+        for (int i = size - 1; i > 0; i--) {
+            mMin[i] = Math.min(mMin[2 * i], mMin[2 * i + 1]);
+            mMax[i] = Math.max(mMax[2 * i], mMax[2 * i + 1]);
+        }
+    }
+
+    void update(int index, float min, float max) {
+        int i = index + mSize;
+        mMin[i] = min;
+        mMax[i] = max;
+        for (i >>= 1; i > 0; i >>= 1) {
+            mMin[i] = Math.min(mMin[2 * i], mMin[2 * i + 1]);
+            mMax[i] = Math.max(mMax[2 * i], mMax[2 * i + 1]);
+        }
+    }
+
+    // Finds min in [fromIndex, toIndex], both inclusive
+    float findMin(int fromIndex, int toIndex) {
+        float min = Float.MAX_VALUE;
+        for (int l = fromIndex + mSize, r = toIndex + mSize + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                min = Math.min(min, mMin[l++]);
+            }
+            if ((r & 1) == 1) {
+                min = Math.min(min, mMin[--r]);
+            }
+        }
+        return min;
+    }
+
+    // Finds max in [fromIndex, toIndex], both inclusive
+    float findMax(int fromIndex, int toIndex) {
+        float max = -Float.MAX_VALUE;
+        for (int l = fromIndex + mSize, r = toIndex + mSize + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                max = Math.max(max, mMax[l++]);
+            }
+            if ((r & 1) == 1) {
+                max = Math.max(max, mMax[--r]);
+            }
+        }
+        return max;
+    }
+}
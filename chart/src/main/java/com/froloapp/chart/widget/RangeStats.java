@@ -0,0 +1,66 @@
+package com.froloapp.chart.widget;
+
+
+/**
+ * Statistics of line values in a range of points: count, sum, average, min and max with their indices;
+ * See {@link Chart#getRangeStats(Line, float, float, RangeStats)};
+ * An instance may be reused for many queries;
+ */
+public final class RangeStats {
+    private int mCount;
+    private double mSum;
+    private float mMin;
+    private float mMax;
+    private int mMinIndex = -1;
+    private int mMaxIndex = -1;
+
+    /**
+     * Returns the number of points in the range, the other values are meaningless if it's 0;
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getSum() {
+        return mSum;
+    }
+
+    public double getAverage() {
+        return mCount > 0 ? mSum / mCount : 0d;
+    }
+
+    public float getMin() {
+        return mMin;
+    }
+
+    public float getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the index of the first point with the min value or -1 if the range is empty;
+     */
+    public int getMinIndex() {
+        return mMinIndex;
+    }
+
+    /**
+     * Returns the index of the first point with the max value or -1 if the range is empty;
+     */
+    public int getMaxIndex() {
+        return mMaxIndex;
+    }
+
+    void set(int count, double sum, float min, int minIndex, float max, int maxIndex) {
+        mCount = count;
+        mSum = sum;
+        mMin = min;
+        mMinIndex = minIndex;
+        mMax = max;
+        mMaxIndex = maxIndex;
+    }
+
+    void clear() {
+        set(0, 0d, 0f, -1, 0f, -1);
+    }
+}
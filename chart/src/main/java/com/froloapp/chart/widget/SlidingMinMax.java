@@ -0,0 +1,226 @@
+package com.froloapp.chart.widget;
+
+
+// Tracks min and max of a sliding window of indices with monotonic deques.
+// When the window is panned by a small step, only the indices entering and leaving it are processed,
+// so a pan costs O(step) amortized and needs no tables over all the points.
+// A deque can only slide one way: indices enter at its back and leave at its front.
+// Sliding the other way or jumping resets the tracker. Seeding the deques scans the whole window,
+// so it's done only once a pan has kept its direction for a few moves and the window is not too big,
+// until then the caller answers from the range tree in O(log n), so jittery pans never re-scan the window.
+final class SlidingMinMax {
+
+    // The window may slide by at most this fraction of its size at once,
+    // otherwise re-scanning it would be cheaper
+    private static final float MAX_SLIDE_FRACTION = 0.5f;
+
+    // Bigger windows are never tracked, a seed scan of them costs more than many range queries
+    private static final int MAX_WINDOW_SIZE = 1 << 14;
+
+    // Number of moves in a row in the same direction before the deques are seeded
+    private static final int MOVES_BEFORE_SEEDING = 3;
+
+    // Indices of the window ordered by the direction, values are increasing in the min deque
+    // and decreasing in the max deque, so their fronts are the min and the max of the window.
+    // Both are ring buffers with power of two capacities
+    private int[] mMinDeque = new int[16];
+    private int mMinHead = 0;
+    private int mMinSize = 0;
+    private int[] mMaxDeque = new int[16];
+    private int mMaxHead = 0;
+    private int mMaxSize = 0;
+
+    // the last window, both bounds are inclusive
+    private int mFromIndex = -1;
+    private int mToIndex = -1;
+    private boolean mHasWindow = false;
+    // 1 if indices enter from the right, -1 if from the left, 0 if the deques are not valid
+    private int mDirection = 0;
+    // Direction of the moves made while the deques are not valid and the number of them in a row
+    private int mPendingDirection = 0;
+    private int mPendingMoves = 0;
+
+    private float[] mMin;
+    private float[] mMax;
+
+    // Must be called when the values change
+    void invalidate() {
+        invalidateDeques();
+        mHasWindow = false;
+        mMinSize = 0;
+        mMaxSize = 0;
+    }
+
+    // Moves the window to [fromIndex, toIndex] over the given local minimums and maximums.
+    // Returns true if the min and max of the window are tracked,
+    // false if the move is a jump, a zoom or a fresh turn, then the caller must find them another way
+    boolean moveTo(float[] min, float[] max, int fromIndex, int toIndex) {
+        if (min != mMin || max != mMax) {
+            // new arrays mean new values
+            invalidate();
+            mMin = min;
+            mMax = max;
+        }
+
+        final boolean hadWindow = mHasWindow;
+        final int oldFromIndex = mFromIndex;
+        final int oldToIndex = mToIndex;
+        mFromIndex = fromIndex;
+        mToIndex = toIndex;
+        mHasWindow = true;
+
+        if (!hadWindow) {
+            return false;
+        }
+        if (fromIndex == oldFromIndex && toIndex == oldToIndex) {
+            return mDirection != 0;
+        }
+
+        final int direction;
+        if (fromIndex >= oldFromIndex && toIndex >= oldToIndex) {
+            direction = 1;
+        } else if (fromIndex <= oldFromIndex && toIndex <= oldToIndex) {
+            direction = -1;
+        } else {
+            // zooming
+            invalidateDeques();
+            return false;
+        }
+        final int windowSize = toIndex - fromIndex + 1;
+        final int step = Math.abs(fromIndex - oldFromIndex) + Math.abs(toIndex - oldToIndex);
+        if (step > windowSize * MAX_SLIDE_FRACTION || windowSize > MAX_WINDOW_SIZE) {
+            // jumping or too big to track
+            invalidateDeques();
+            return false;
+        }
+
+        if (direction != mDirection) {
+            // a new pan, the window is scanned once it's clear the pan goes on
+            mDirection = 0;
+            if (direction != mPendingDirection) {
+                mPendingDirection = direction;
+                mPendingMoves = 0;
+            }
+            if (++mPendingMoves < MOVES_BEFORE_SEEDING) {
+                return false;
+            }
+            mPendingDirection = 0;
+            mPendingMoves = 0;
+            reset(fromIndex, toIndex, direction);
+            return true;
+        }
+
+        if (direction > 0) {
+            for (int i = oldToIndex + 1; i <= toIndex; i++) {
+                push(i);
+            }
+            while (mMinSize > 0 && mMinDeque[mMinHead] < fromIndex) {
+                popMinFront();
+            }
+            while (mMaxSize > 0 && mMaxDeque[mMaxHead] < fromIndex) {
+                popMaxFront();
+            }
+        } else {
+            for (int i = oldFromIndex - 1; i >= fromIndex; i--) {
+                push(i);
+            }
+            while (mMinSize > 0 && mMinDeque[mMinHead] > toIndex) {
+                popMinFront();
+            }
+            while (mMaxSize > 0 && mMaxDeque[mMaxHead] > toIndex) {
+                popMaxFront();
+            }
+        }
+        return true;
+    }
+
+    private void invalidateDeques() {
+        mDirection = 0;
+        mPendingDirection = 0;
+        mPendingMoves = 0;
+    }
+
+    // Valid only if the last moveTo returned true
+    float getMin() {
+        return mMin[mMinDeque[mMinHead]];
+    }
+
+    // Valid only if the last moveTo returned true
+    float getMax() {
+        return mMax[mMaxDeque[mMaxHead]];
+    }
+
+    private void reset(int fromIndex, int toIndex, int direction) {
+        mDirection = direction;
+        mMinHead = 0;
+        mMinSize = 0;
+        mMaxHead = 0;
+        mMaxSize = 0;
+        ensureCapacity(toIndex - fromIndex + 1);
+        if (direction > 0) {
+            for (int i = fromIndex; i <= toIndex; i++) {
+                push(i);
+            }
+        } else {
+            for (int i = toIndex; i >= fromIndex; i--) {
+                push(i);
+            }
+        }
+    }
+
+    // Pushes the index entering the window to the backs of the deques,
+    // dropping the indices that can't be the min or the max anymore
+    private void push(int index) {
+        ensureCapacity(Math.max(mMinSize, mMaxSize) + 1);
+
+        final float min = mMin[index];
+        int mask = mMinDeque.length - 1;
+        while (mMinSize > 0 && mMin[mMinDeque[(mMinHead + mMinSize - 1) & mask]] >= min) {
+            mMinSize--;
+        }
+        mMinDeque[(mMinHead + mMinSize) & mask] = index;
+        mMinSize++;
+
+        final float max = mMax[index];
+        mask = mMaxDeque.length - 1;
+        while (mMaxSize > 0 && mMax[mMaxDeque[(mMaxHead + mMaxSize - 1) & mask]] <= max) {
+            mMaxSize--;
+        }
+        mMaxDeque[(mMaxHead + mMaxSize) & mask] = index;
+        mMaxSize++;
+    }
+
+    private void popMinFront() {
+        mMinHead = (mMinHead + 1) & (mMinDeque.length - 1);
+        mMinSize--;
+    }
+
+    private void popMaxFront() {
+        mMaxHead = (mMaxHead + 1) & (mMaxDeque.length - 1);
+        mMaxSize--;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mMinDeque.length < capacity) {
+            mMinDeque = grow(mMinDeque, mMinHead, mMinSize, capacity);
+            mMinHead = 0;
+        }
+        if (mMaxDeque.length < capacity) {
+            mMaxDeque = grow(mMaxDeque, mMaxHead, mMaxSize, capacity);
+            mMaxHead = 0;
+        }
+    }
+
+    private static int[] grow(int[] deque, int head, int size, int capacity) {
+        int newLength = deque.length;
+        while (newLength < capacity) {
+            newLength <<= 1;
+        }
+        final int[] newDeque = new int[newLength];
+        final int mask = deque.length - 1;
+        for (int i = 0; i < size; i++) {
+            newDeque[i] = deque[(head + i) & mask];
+        }
+        return newDeque;
+    }
+}
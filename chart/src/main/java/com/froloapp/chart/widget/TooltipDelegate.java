@@ -0,0 +1,272 @@
+package com.froloapp.chart.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+
+import com.froloapp.chart.R;
+
+import java.util.List;
+
+
+// This delegate is responsible for drawing a tooltip with values of the selected point.
+// The tooltip is drawn over the chart, nothing is allocated while the selection moves:
+// widths of line names are cached per chart, values are formatted into a reused char buffer.
+final class TooltipDelegate {
+    private static final float DEFAULT_TITLE_TEXT_SIZE_IN_SP = Config.TEXT_SIZE_IN_SP;
+    private static final float DEFAULT_VALUE_TEXT_SIZE_IN_SP = 16f;
+    private static final float DEFAULT_NAME_TEXT_SIZE_IN_SP = 12f;
+
+    private static final float DEFAULT_PADDING_IN_DP = 8f;
+    private static final float DEFAULT_ROW_SPACING_IN_DP = 4f;
+    private static final float DEFAULT_COLUMN_SPACING_IN_DP = 12f;
+    // Space between the selected X position line and the tooltip
+    private static final float DEFAULT_MARGIN_IN_DP = 8f;
+    private static final float DEFAULT_CORNER_RADIUS_IN_DP = 4f;
+
+    // Enough for a long value with a sign, a point and two decimal digits
+    private static final int MAX_VALUE_LENGTH = 24;
+
+    private final ChartHost mView;
+
+    private boolean mIsEnabled = false;
+
+    // Paint tools
+    private final Paint mBackgroundPaint;
+    private final Paint mBorderPaint;
+    private final Paint mTitlePaint;
+    private final Paint mValuePaint;
+    private final Paint mNamePaint;
+
+    // Cached font metrics
+    private final float mTitleAscent;
+    private final float mTitleHeight;
+    private final float mValueAscent;
+    private final float mValueHeight;
+    private final float mNameAscent;
+    private final float mNameHeight;
+
+    private final float mPadding;
+    private final float mRowSpacing;
+    private final float mColumnSpacing;
+    private final float mMargin;
+    private final float mCornerRadius;
+
+    // Widths of the line names, they change only with the chart
+    private float[] mNameWidths = new float[0];
+    private boolean mIsNameWidthsValid = false;
+
+    // Widths of the columns, measured for the last laid out point
+    private float[] mColumnWidths = new float[0];
+
+    private final char[] mValueChars = new char[MAX_VALUE_LENGTH];
+
+    // Bounds of the last laid out tooltip
+    private final RectF mBounds = new RectF();
+
+    TooltipDelegate(ChartHost view) {
+        this.mView = view;
+        final Context context = view.getContext();
+
+        Paint backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        backgroundPaint.setStyle(Paint.Style.FILL);
+        mBackgroundPaint = backgroundPaint;
+
+        Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(Misc.dpToPx(1f, context));
+        mBorderPaint = borderPaint;
+
+        Paint titlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        titlePaint.setStyle(Paint.Style.FILL);
+        titlePaint.setTextSize(Misc.spToPx(DEFAULT_TITLE_TEXT_SIZE_IN_SP, context));
+        mTitlePaint = titlePaint;
+
+        Paint valuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        valuePaint.setStyle(Paint.Style.FILL);
+        valuePaint.setFakeBoldText(true);
+        valuePaint.setTextSize(Misc.spToPx(DEFAULT_VALUE_TEXT_SIZE_IN_SP, context));
+        mValuePaint = valuePaint;
+
+        Paint namePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        namePaint.setStyle(Paint.Style.FILL);
+        namePaint.setTextSize(Misc.spToPx(DEFAULT_NAME_TEXT_SIZE_IN_SP, context));
+        mNamePaint = namePaint;
+
+        Paint.FontMetrics metrics = titlePaint.getFontMetrics();
+        mTitleAscent = metrics.ascent;
+        mTitleHeight = metrics.descent - metrics.ascent;
+        metrics = valuePaint.getFontMetrics();
+        mValueAscent = metrics.ascent;
+        mValueHeight = metrics.descent - metrics.ascent;
+        metrics = namePaint.getFontMetrics();
+        mNameAscent = metrics.ascent;
+        mNameHeight = metrics.descent - metrics.ascent;
+
+        mPadding = Misc.dpToPx(DEFAULT_PADDING_IN_DP, context);
+        mRowSpacing = Misc.dpToPx(DEFAULT_ROW_SPACING_IN_DP, context);
+        mColumnSpacing = Misc.dpToPx(DEFAULT_COLUMN_SPACING_IN_DP, context);
+        mMargin = Misc.dpToPx(DEFAULT_MARGIN_IN_DP, context);
+        mCornerRadius = Misc.dpToPx(DEFAULT_CORNER_RADIUS_IN_DP, context);
+    }
+
+    void loadAttributes(Context context, AttributeSet attrs) {
+        final boolean isEnabled;
+        final int backgroundColor;
+        final int borderColor;
+        final int textColor;
+        if (attrs != null) {
+            TypedArray typedArray = context.getTheme()
+                    .obtainStyledAttributes(attrs, R.styleable.ChartView, 0, 0);
+            isEnabled = typedArray.getBoolean(R.styleable.ChartView_tooltipEnabled,
+                    false);
+            backgroundColor = typedArray.getColor(R.styleable.ChartView_tooltipBackgroundColor,
+                    Color.WHITE);
+            borderColor = typedArray.getColor(R.styleable.ChartView_tooltipBorderColor,
+                    0x1F000000);
+            textColor = typedArray.getColor(R.styleable.ChartView_tooltipTextColor,
+                    Color.BLACK);
+            typedArray.recycle();
+        } else {
+            isEnabled = false;
+            backgroundColor = Color.WHITE;
+            borderColor = 0x1F000000;
+            textColor = Color.BLACK;
+        }
+
+        mIsEnabled = isEnabled;
+        mBackgroundPaint.setColor(backgroundColor);
+        mBorderPaint.setColor(borderColor);
+        mTitlePaint.setColor(textColor);
+    }
+
+    boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        mIsEnabled = enabled;
+    }
+
+    // Must be called when the lines change
+    void setLineCount(int lineCount) {
+        if (mNameWidths.length < lineCount) {
+            mNameWidths = new float[lineCount];
+            mColumnWidths = new float[lineCount];
+        }
+        mIsNameWidthsValid = false;
+    }
+
+    // Returns bounds of the last laid out tooltip
+    RectF getBounds() {
+        return mBounds;
+    }
+
+    // Measures the tooltip for the point at the given X coordinate and stores its bounds
+    void layout(Point point, int index, float xCoordinate, List<LineDelegate> lineDelegates) {
+        if (!mIsNameWidthsValid) {
+            for (int i = 0; i < lineDelegates.size(); i++) {
+                mNameWidths[i] = mNamePaint.measureText(lineDelegates.get(i).getLine().getName());
+            }
+            mIsNameWidthsValid = true;
+        }
+
+        float columnsWidth = 0f;
+        int columnCount = 0;
+        for (int i = 0; i < lineDelegates.size(); i++) {
+            LineDelegate helper = lineDelegates.get(i);
+            if (!helper.isVisible()) {
+                continue;
+            }
+            int length = formatValue(helper.getLine().getValueAt(index), mValueChars);
+            float valueWidth = mValuePaint.measureText(mValueChars, 0, length);
+            float columnWidth = Math.max(valueWidth, mNameWidths[i]);
+            mColumnWidths[i] = columnWidth;
+            columnsWidth += columnWidth;
+            columnCount++;
+        }
+        if (columnCount > 1) {
+            columnsWidth += mColumnSpacing * (columnCount - 1);
+        }
+
+        final float titleWidth = mTitlePaint.measureText(point.text);
+        final float width = Math.max(titleWidth, columnsWidth) + mPadding * 2;
+        float height = mTitleHeight + mPadding * 2;
+        if (columnCount > 0) {
+            height += mRowSpacing + mValueHeight + mNameHeight;
+        }
+
+        // to the right of the selected X position if it fits, otherwise to the left
+        float left = xCoordinate + mMargin;
+        if (left + width > mView.getMeasuredWidth() - mView.getPaddingRight()) {
+            left = Math.max(mView.getPaddingLeft(), xCoordinate - mMargin - width);
+        }
+        final float top = mView.getPaddingTop();
+        mBounds.set(left, top, left + width, top + height);
+    }
+
+    void draw(Canvas canvas, Point point, int index, float xCoordinate, List<LineDelegate> lineDelegates) {
+        layout(point, index, xCoordinate, lineDelegates);
+
+        canvas.drawRoundRect(mBounds, mCornerRadius, mCornerRadius, mBackgroundPaint);
+        canvas.drawRoundRect(mBounds, mCornerRadius, mCornerRadius, mBorderPaint);
+
+        final float left = mBounds.left + mPadding;
+        final float top = mBounds.top + mPadding;
+        canvas.drawText(point.text, left, top - mTitleAscent, mTitlePaint);
+
+        final float valueBaseline = top + mTitleHeight + mRowSpacing - mValueAscent;
+        final float nameBaseline = top + mTitleHeight + mRowSpacing + mValueHeight - mNameAscent;
+        float x = left;
+        for (int i = 0; i < lineDelegates.size(); i++) {
+            LineDelegate helper = lineDelegates.get(i);
+            if (!helper.isVisible()) {
+                continue;
+            }
+            Line line = helper.getLine();
+            int length = formatValue(line.getValueAt(index), mValueChars);
+
+            mValuePaint.setColor(line.getColor());
+            canvas.drawText(mValueChars, 0, length, x, valueBaseline, mValuePaint);
+            mNamePaint.setColor(line.getColor());
+            canvas.drawText(line.getName(), x, nameBaseline, mNamePaint);
+
+            x += mColumnWidths[i] + mColumnSpacing;
+        }
+    }
+
+    // Writes the value to the buffer without allocations, returns the number of written chars.
+    // Integral values are written as is, others keep up to two decimal digits
+    static int formatValue(float value, char[] buffer) {
+        final long scaled = Math.round(Math.abs((double) value) * 100d);
+        long integral = scaled / 100;
+        final int fraction = (int) (scaled % 100);
+
+        // writing from the end of the buffer
+        int pos = buffer.length;
+        if (fraction != 0) {
+            if (fraction % 10 == 0) {
+                buffer[--pos] = (char) ('0' + fraction / 10);
+            } else {
+                buffer[--pos] = (char) ('0' + fraction % 10);
+                buffer[--pos] = (char) ('0' + fraction / 10);
+            }
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + integral % 10);
+            integral /= 10;
+        } while (integral > 0);
+        if (value < 0 && scaled != 0) {
+            buffer[--pos] = '-';
+        }
+
+        final int length = buffer.length - pos;
+        System.arraycopy(buffer, pos, buffer, 0, length);
+        return length;
+    }
+}
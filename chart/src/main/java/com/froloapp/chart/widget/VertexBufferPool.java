@@ -0,0 +1,47 @@
+package com.froloapp.chart.widget;
+
+
+// Shares one vertex buffer and one value buffer between all line delegates drawing on the same thread.
+// Lines are drawn one after another, so a single buffer sized for the biggest
+// visible window is enough, no matter how many lines or charts there are.
+final class VertexBufferPool {
+
+    // Each buffer grows in steps of this size to avoid reallocation on every small zoom
+    private static final int GROW_STEP = 1024;
+
+    private static final ThreadLocal<VertexBufferPool> POOLS = new ThreadLocal<VertexBufferPool>() {
+        @Override protected VertexBufferPool initialValue() {
+            return new VertexBufferPool();
+        }
+    };
+
+    static VertexBufferPool get() {
+        return POOLS.get();
+    }
+
+    private float[] mBuffer = new float[0];
+    private float[] mValueBuffer = new float[0];
+
+    private VertexBufferPool() {
+    }
+
+    // Returns a buffer that is able to hold at least the given number of vertices for Canvas.drawLines
+    float[] obtainLineBuffer(int vertexCount) {
+        // every vertex except the first one is stored twice (as the end of one segment and the start of the next)
+        int required = Math.max(1, vertexCount) * 4;
+        if (mBuffer.length < required) {
+            int newSize = (required / GROW_STEP + 1) * GROW_STEP;
+            mBuffer = new float[newSize];
+        }
+        return mBuffer;
+    }
+
+    // Returns a buffer that is able to hold at least the given number of line values read at once
+    float[] obtainValueBuffer(int valueCount) {
+        if (mValueBuffer.length < valueCount) {
+            int newSize = (valueCount / GROW_STEP + 1) * GROW_STEP;
+            mValueBuffer = new float[newSize];
+        }
+        return mValueBuffer;
+    }
+}
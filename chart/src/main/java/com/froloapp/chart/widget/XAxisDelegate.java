@@ -42,7 +42,7 @@ final class XAxisDelegate {
         }
     };
 
-    private final AbsChartView mView;
+    private final ChartHost mView;
     private List<Point> mPoints = Collections.emptyList();
 
     private float mStartXPosition = 0;
@@ -64,6 +64,9 @@ final class XAxisDelegate {
 
     private boolean mIsAnimating = false;
 
+    // If false, fading phantom points are not drawn during transitions
+    private boolean mWillDrawPhantomPoints = true;
+
     private ValueAnimator mAnim;
 
     private final Animator.AnimatorListener mAnimListener =
@@ -92,7 +95,7 @@ final class XAxisDelegate {
     //private final Paint mLinePaint;
     private final Paint mTextPaint;
 
-    XAxisDelegate(AbsChartView view) {
+    XAxisDelegate(ChartHost view) {
         this.mView = view;
 
         Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -281,8 +284,15 @@ final class XAxisDelegate {
         checkPointStepChanged(animate);
     }
 
+    void setWillDrawPhantomPoints(boolean willDraw) {
+        if (mWillDrawPhantomPoints != willDraw) {
+            mWillDrawPhantomPoints = willDraw;
+            requestRedraw();
+        }
+    }
+
     void draw(Canvas canvas) {
-        if (mIsAnimating) {
+        if (mIsAnimating && mWillDrawPhantomPoints) {
             drawPointsWithTransition(canvas);
         } else {
             drawPointsWithoutTransition(canvas);
@@ -0,0 +1,271 @@
+package com.froloapp.chart.widget;
+
+
+// Lossless compressed line values, Gorilla style: each value is XOR-ed with the previous one
+// and only the meaningful bits of the result are stored. Smooth or repeating series shrink several times.
+// Values are compressed in independent blocks, the blocks being read are decoded into a small LRU cache,
+// so a window of the chart is decoded once and then read as plain floats.
+// Bulk reads of contiguous ranges decode whole blocks straight into the caller's array and keep their cursor
+// locally, so parallel scans over different parts of a line neither contend for the cache nor evict each other.
+final class XorCompressedValues extends LineValues {
+
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // Number of decoded blocks kept per line
+    private static final int CACHE_SIZE = 8;
+
+    // A decoded block, never changed after it's created, so it can be read from any thread
+    private static final class Block {
+        final int index;
+        final float[] values;
+
+        Block(int index, float[] values) {
+            this.index = index;
+            this.values = values;
+        }
+    }
+
+    private final int mSize;
+    // Bit stream of all blocks and the offset of each block in it
+    private final long[] mBits;
+    private final long[] mBlockOffsets;
+
+    // The last block read by get(index), checked before the cache; bulk reads keep their own cursor
+    private volatile Block mLastBlock;
+    // Guarded by this
+    private final Block[] mCache = new Block[CACHE_SIZE];
+    private final long[] mCacheUseTimes = new long[CACHE_SIZE];
+    private long mUseTime = 0L;
+
+    XorCompressedValues(float[] values) {
+        mSize = values.length;
+        final int blockCount = (values.length + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        final BitWriter writer = new BitWriter(Math.max(1, values.length / 2));
+        final long[] blockOffsets = new long[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            blockOffsets[b] = writer.getBitCount();
+            final int from = b << BLOCK_SHIFT;
+            final int to = Math.min(values.length, from + BLOCK_SIZE);
+
+            int prev = Float.floatToRawIntBits(values[from]);
+            writer.write(prev, 32);
+            int prevLeading = -1;
+            int prevTrailing = 0;
+            for (int i = from + 1; i < to; i++) {
+                final int bits = Float.floatToRawIntBits(values[i]);
+                final int xor = bits ^ prev;
+                prev = bits;
+                if (xor == 0) {
+                    // the same value
+                    writer.write(0, 1);
+                    continue;
+                }
+                writer.write(1, 1);
+                final int leading = Math.min(31, Integer.numberOfLeadingZeros(xor));
+                final int trailing = Integer.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    // the meaningful bits fit in the previous window
+                    writer.write(0, 1);
+                    writer.write(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+                } else {
+                    final int length = 32 - leading - trailing;
+                    writer.write(1, 1);
+                    writer.write(leading, 5);
+                    writer.write(length - 1, 5);
+                    writer.write(xor >>> trailing, length);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+        }
+        mBits = writer.toArray();
+        mBlockOffsets = blockOffsets;
+    }
+
+    @Override int size() {
+        return mSize;
+    }
+
+    @Override float get(int index) {
+        final int blockIndex = index >> BLOCK_SHIFT;
+        Block block = mLastBlock;
+        if (block == null || block.index != blockIndex) {
+            block = findBlock(blockIndex);
+            mLastBlock = block;
+        }
+        return block.values[index & BLOCK_MASK];
+    }
+
+    @Override void get(int fromIndex, int step, float[] out, int outOffset, int count) {
+        if (step == 1) {
+            getRange(fromIndex, out, outOffset, count);
+            return;
+        }
+        // the cursor is local, the shared last block is left to the single value reads
+        Block block = null;
+        for (int k = 0, i = fromIndex; k < count; k++, i += step) {
+            final int blockIndex = i >> BLOCK_SHIFT;
+            if (block == null || block.index != blockIndex) {
+                block = findBlock(blockIndex);
+            }
+            out[outOffset + k] = block.values[i & BLOCK_MASK];
+        }
+    }
+
+    // Whole blocks are decoded right into out without the cache, partial ones at the ends are copied from it
+    private void getRange(int fromIndex, float[] out, int outOffset, int count) {
+        final int toIndex = fromIndex + count;
+        int i = fromIndex;
+        while (i < toIndex) {
+            final int blockIndex = i >> BLOCK_SHIFT;
+            final int blockFrom = blockIndex << BLOCK_SHIFT;
+            final int blockTo = Math.min(mSize, blockFrom + BLOCK_SIZE);
+            final int to = Math.min(toIndex, blockTo);
+            if (i == blockFrom && to == blockTo) {
+                decodeBlock(blockIndex, out, outOffset + i - fromIndex);
+            } else {
+                System.arraycopy(findBlock(blockIndex).values, i - blockFrom, out, outOffset + i - fromIndex, to - i);
+            }
+            i = to;
+        }
+    }
+
+    private Block findBlock(int blockIndex) {
+        Block block = findCachedBlock(blockIndex);
+        if (block == null) {
+            // decoded outside the lock, so threads reading other blocks don't wait for it
+            final int count = Math.min(mSize - (blockIndex << BLOCK_SHIFT), BLOCK_SIZE);
+            final float[] values = new float[count];
+            decodeBlock(blockIndex, values, 0);
+            block = new Block(blockIndex, values);
+            cacheBlock(block);
+        }
+        return block;
+    }
+
+    /* Nullable */
+    private synchronized Block findCachedBlock(int blockIndex) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            Block block = mCache[i];
+            if (block != null && block.index == blockIndex) {
+                mCacheUseTimes[i] = ++mUseTime;
+                return block;
+            }
+        }
+        return null;
+    }
+
+    // Evicts the least recently used block
+    private synchronized void cacheBlock(Block block) {
+        int oldest = 0;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            Block cached = mCache[i];
+            if (cached != null && cached.index == block.index) {
+                // another thread has decoded it meanwhile
+                return;
+            }
+            if (mCacheUseTimes[i] < mCacheUseTimes[oldest]) {
+                oldest = i;
+            }
+        }
+        mCache[oldest] = block;
+        mCacheUseTimes[oldest] = ++mUseTime;
+    }
+
+    // Decodes the block into values starting at the offset
+    private void decodeBlock(int blockIndex, float[] values, int offset) {
+        final int from = blockIndex << BLOCK_SHIFT;
+        final int count = Math.min(mSize - from, BLOCK_SIZE);
+        final BitReader reader = new BitReader(mBits, mBlockOffsets[blockIndex]);
+
+        int prev = reader.read(32);
+        values[offset] = Float.intBitsToFloat(prev);
+        int prevLeading = 0;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (reader.read(1) != 0) {
+                final int xor;
+                if (reader.read(1) == 0) {
+                    xor = reader.read(32 - prevLeading - prevTrailing) << prevTrailing;
+                } else {
+                    final int leading = reader.read(5);
+                    final int length = reader.read(5) + 1;
+                    final int trailing = 32 - leading - length;
+                    xor = reader.read(length) << trailing;
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+                prev ^= xor;
+            }
+            values[offset + i] = Float.intBitsToFloat(prev);
+        }
+    }
+
+    private static final class BitWriter {
+        private long[] mWords;
+        private long mBitCount = 0L;
+
+        BitWriter(int initialBits) {
+            mWords = new long[(initialBits >> 6) + 1];
+        }
+
+        long getBitCount() {
+            return mBitCount;
+        }
+
+        // Writes the lowest count bits of the value, count is in [1, 32]
+        void write(int value, int count) {
+            final long bits = value & (0xFFFFFFFFL >>> (32 - count));
+            final int word = (int) (mBitCount >>> 6);
+            final int bit = (int) (mBitCount & 63);
+            if (word + 1 >= mWords.length) {
+                long[] words = new long[mWords.length * 2 + 2];
+                System.arraycopy(mWords, 0, words, 0, mWords.length);
+                mWords = words;
+            }
+            // bits are written from the most significant one
+            final int shift = 64 - bit - count;
+            if (shift >= 0) {
+                mWords[word] |= bits << shift;
+            } else {
+                mWords[word] |= bits >>> -shift;
+                mWords[word + 1] |= bits << (64 + shift);
+            }
+            mBitCount += count;
+        }
+
+        long[] toArray() {
+            final int length = (int) ((mBitCount + 63) >>> 6);
+            long[] words = new long[length];
+            System.arraycopy(mWords, 0, words, 0, length);
+            return words;
+        }
+    }
+
+    private static final class BitReader {
+        private final long[] mWords;
+        private long mPosition;
+
+        BitReader(long[] words, long position) {
+            mWords = words;
+            mPosition = position;
+        }
+
+        // Reads count bits, count is in [1, 32]
+        int read(int count) {
+            final int word = (int) (mPosition >>> 6);
+            final int bit = (int) (mPosition & 63);
+            final int shift = 64 - bit - count;
+            long bits;
+            if (shift >= 0) {
+                bits = mWords[word] >>> shift;
+            } else {
+                bits = (mWords[word] << -shift) | (mWords[word + 1] >>> (64 + shift));
+            }
+            mPosition += count;
+            return (int) (bits & (0xFFFFFFFFL >>> (32 - count)));
+        }
+    }
+}
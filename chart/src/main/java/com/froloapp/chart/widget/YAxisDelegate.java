@@ -64,7 +64,7 @@ final class YAxisDelegate {
         }
     };
 
-    private final AbsChartView mView;
+    private final ChartHost mView;
 
     // count of horizontal lines
     private final int mLineCount = 5;
@@ -88,6 +88,9 @@ final class YAxisDelegate {
 
     private boolean mIsAnimating;
 
+    // If false, fading phantom lines are not drawn during transitions
+    private boolean mWillDrawPhantomLines = true;
+
     private ValueAnimator mAnim;
 
     private final Animator.AnimatorListener mAnimListener =
@@ -116,7 +119,7 @@ final class YAxisDelegate {
     private final Paint mLinePaint;
     private final Paint mTextPaint;
 
-    YAxisDelegate(AbsChartView view) {
+    YAxisDelegate(ChartHost view) {
         this.mView = view;
 
         Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -203,7 +206,7 @@ final class YAxisDelegate {
 
         final float lineStrokeWidth = mLinePaint.getStrokeWidth();
 
-        if (mIsAnimating) {
+        if (mIsAnimating && mWillDrawPhantomLines) {
             // Here, we're drawing phantom lines
 
             mLinePaint.setAlpha(fadeOutAlpha);
@@ -251,6 +254,13 @@ final class YAxisDelegate {
         }
     }
 
+    void setWillDrawPhantomLines(boolean willDraw) {
+        if (mWillDrawPhantomLines != willDraw) {
+            mWillDrawPhantomLines = willDraw;
+            requestRedraw();
+        }
+    }
+
     void setMaxAndMin(float min, float max, boolean animate) {
         // check min value
         if (min != this.mTargetMinYValue || max != this.mTargetMaxYValue) {